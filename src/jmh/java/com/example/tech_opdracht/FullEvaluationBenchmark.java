@@ -0,0 +1,68 @@
+package com.example.tech_opdracht;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full evaluation passes by number of fork-join workers, to see how far they scale with cores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class FullEvaluationBenchmark {
+
+    @Param({"100000", "1000000"})
+    int people;
+
+    @Param({"1", "2", "4", "8"})
+    int parallelism;
+
+    ParallelEvaluator evaluator;
+    PeopleService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        evaluator = new ParallelEvaluator(parallelism);
+        service = new PeopleService(new PeopleRepository(), PersonLocks.global(), Clock.systemDefaultZone(), MutationLog.NONE,
+                PeopleMetrics.none(), MutationExecutor.DIRECT, PeopleCluster.SINGLE, evaluator);
+        service.addOrUpdatePeople(SyntheticFamilies.generate(people, 0.3, 42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        evaluator.close();
+    }
+
+    /**
+     * Blocks writers, as after recovery
+     */
+    @Benchmark
+    public void rebuild() {
+        service.rebuild();
+    }
+
+    /**
+     * Without locks, nothing disagrees so only the parallel pass is measured
+     */
+    @Benchmark
+    public int sweep() {
+        return service.sweep();
+    }
+}
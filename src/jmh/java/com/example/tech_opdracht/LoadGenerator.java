@@ -0,0 +1,319 @@
+package com.example.tech_opdracht;
+
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives POST /api/v1/people with synthetic family graphs and reports throughput and latency percentiles
+ * <p>
+ * Households are singles, couples without children and couples or single parents with one to five
+ * children of mixed ages. A {@code matching-share} of them are two partners with exactly three
+ * children of whom at least one is a minor, so they match the default pattern. Everyone is posted
+ * once in household order, after which the same records are sent again. Those re-sends are skipped
+ * by the service as unchanged unless {@code mutate} is set, which gives every round new names.
+ * <p>
+ * With a {@code rate} every request has a planned start time and latency is measured from there,
+ * so a stalled server shows up in the percentiles instead of silently lowering the request rate.
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec@load -Dload.args="people=100000 concurrency=64 rate=5000 duration=60"
+ * </pre>
+ * Arguments are {@code key=value}: {@code url} of a running instance (when absent one is started
+ * in this JVM), {@code people}, {@code matching-share}, {@code concurrency}, {@code rate} per second
+ * (0 for as fast as possible), {@code warmup} and {@code duration} in seconds, {@code seed}, and
+ * {@code mutate} to change the re-sent records.
+ */
+public final class LoadGenerator {
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final OkHttpClient client;
+    private final String url;
+    private final List<String> bodies;
+    private final int concurrency;
+    private final double rate;
+    private final boolean mutate;
+    private final long warmupNanos;
+    private final long durationNanos;
+
+    private final AtomicLong next = new AtomicLong();
+    private final LongAdder errors = new LongAdder();
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    LoadGenerator(String url, List<String> bodies, int concurrency, double rate, boolean mutate, long warmupSeconds, long durationSeconds) {
+        this.url = url;
+        this.bodies = bodies;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.mutate = mutate;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        this.client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(concurrency, 5, TimeUnit.MINUTES))
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final var options = new HashMap<String, String>();
+
+        for (final var arg : args) {
+            final var separator = arg.indexOf('=');
+
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            }
+
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        final var people = Integer.parseInt(options.getOrDefault("people", "100000"));
+        final var matchingShare = Double.parseDouble(options.getOrDefault("matching-share", "0.1"));
+        final var seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        ConfigurableApplicationContext context = null;
+        var url = options.get("url");
+
+        if (url == null) {
+            context = SpringApplication.run(TechOpdrachtApplication.class, "--server.port=0", "--logging.level.root=warn");
+            url = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        }
+
+        try {
+            final var generator = new LoadGenerator(
+                    url + "/api/v1/people",
+                    households(people, matchingShare, seed),
+                    Integer.parseInt(options.getOrDefault("concurrency", "64")),
+                    Double.parseDouble(options.getOrDefault("rate", "0")),
+                    Boolean.parseBoolean(options.getOrDefault("mutate", "false")),
+                    Long.parseLong(options.getOrDefault("warmup", "10")),
+                    Long.parseLong(options.getOrDefault("duration", "60"))
+            );
+
+            System.out.println(generator.run());
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * Run for the warmup and the measured duration
+     */
+    Report run() throws InterruptedException {
+        final var started = System.nanoTime();
+        final var workers = new ArrayList<Thread>();
+        final var latencies = new ArrayList<long[]>();
+
+        for (int i = 0; i < concurrency; i++) {
+            final var recorded = new LatencyRecorder();
+            workers.add(Thread.ofVirtual().name("load-" + i).start(() -> {
+                work(started, recorded);
+                synchronized (latencies) {
+                    latencies.add(recorded.toArray());
+                }
+            }));
+        }
+
+        for (final var worker : workers) {
+            worker.join();
+        }
+
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+
+        final var all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        final var counts = new TreeMap<Integer, Long>();
+        statuses.forEach((status, count) -> counts.put(status, count.sum()));
+
+        return new Report(all, durationNanos, errors.sum(), counts);
+    }
+
+    private void work(long started, LatencyRecorder recorded) {
+        final var end = started + warmupNanos + durationNanos;
+
+        while (true) {
+            final var index = next.getAndIncrement();
+            // Without a rate every request is planned the moment a worker is free
+            final var planned = rate > 0 ? started + (long) (index * 1e9 / rate) : System.nanoTime();
+
+            if (planned >= end) {
+                return;
+            }
+
+            final var wait = planned - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            final var body = body(index);
+            final var request = new Request.Builder().url(url).post(RequestBody.create(body, JSON)).build();
+
+            try (Response response = client.newCall(request).execute()) {
+                statuses.computeIfAbsent(response.code(), _ -> new LongAdder()).increment();
+            } catch (IOException e) {
+                errors.increment();
+            }
+
+            if (planned >= started + warmupNanos) {
+                recorded.add(System.nanoTime() - planned);
+            }
+        }
+    }
+
+    /**
+     * The request body for the index-th request, renamed by round when re-sends are mutated
+     */
+    private String body(long index) {
+        final var body = bodies.get((int) (index % bodies.size()));
+        final var round = index / bodies.size();
+
+        if (!mutate || round == 0) {
+            return body;
+        }
+
+        return body.replace("\"name\":\"", "\"name\":\"round " + round + " ");
+    }
+
+    /**
+     * Request bodies for synthetic households, each household's people next to each other
+     */
+    static List<String> households(int people, double matchingShare, long seed) {
+        final var random = new Random(seed);
+        final var today = LocalDate.now();
+        final var bodies = new ArrayList<String>(people);
+        // Grandparents are only referred to, they are auto-created by the service
+        final var grandparents = people + 1_000_000;
+        var id = 0;
+
+        while (bodies.size() < people) {
+            final var matching = random.nextDouble() < matchingShare;
+            final var partners = matching || random.nextDouble() < 0.7;
+            final var childCount = matching ? 3 : random.nextInt(6);
+            // A non-matching household with three children and a partner only has adult children
+            final var onlyAdults = !matching && partners && childCount == 3;
+
+            final var first = id++;
+            final var second = partners ? id++ : -1;
+            final var children = new int[childCount];
+            for (int i = 0; i < childCount; i++) {
+                children[i] = id++;
+            }
+
+            bodies.add(person(first, "parent " + first, today.minusYears(25 + random.nextInt(40)), second,
+                    grandparents + 2 * first, grandparents + 2 * first + 1, children));
+
+            if (partners) {
+                bodies.add(person(second, "parent " + second, today.minusYears(25 + random.nextInt(40)), first,
+                        grandparents + 2 * second, grandparents + 2 * second + 1, children));
+            }
+
+            for (int i = 0; i < childCount; i++) {
+                final var age = onlyAdults ? 18 + random.nextInt(10) : random.nextInt(28);
+                // Matching households get their minor in the last child, the others stay random
+                final var birthDate = matching && i == childCount - 1 ? today.minusYears(random.nextInt(17)) : today.minusYears(age);
+
+                bodies.add(person(children[i], "child " + children[i], birthDate.minusDays(random.nextInt(365)), -1,
+                        first, partners ? second : grandparents + 2 * children[i], new int[0]));
+            }
+        }
+
+        return bodies.subList(0, people);
+    }
+
+    private static String person(int id, String name, LocalDate birthDate, int partnerId, int parent1, int parent2, int[] children) {
+        final var json = new StringBuilder(256)
+                .append("{\"id\":").append(id)
+                .append(",\"name\":\"").append(name)
+                .append("\",\"birthDate\":\"").append(birthDate)
+                .append("\",\"parent1\":{\"id\":").append(parent1)
+                .append("},\"parent2\":{\"id\":").append(parent2).append('}');
+
+        if (partnerId >= 0) {
+            json.append(",\"partner\":{\"id\":").append(partnerId).append('}');
+        }
+
+        json.append(",\"children\":[");
+        for (int i = 0; i < children.length; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(children[i]).append('}');
+        }
+
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Latencies of one worker, kept exactly so the tail percentiles are not approximated
+     */
+    private static final class LatencyRecorder {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = nanos;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * @param latencies sorted latencies of the measured requests in nanoseconds
+     */
+    record Report(long[] latencies, long durationNanos, long errors, Map<Integer, Long> statuses) {
+
+        double throughput() {
+            return latencies.length / (durationNanos / 1e9);
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         */
+        double percentileMillis(double quantile) {
+            if (latencies.length == 0) {
+                return Double.NaN;
+            }
+
+            final var index = (int) Math.min(latencies.length - 1, Math.ceil(quantile * latencies.length) - 1);
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=%d throughput=%.1f/s p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms errors=%d statuses=%s".formatted(
+                    latencies.length,
+                    throughput(),
+                    percentileMillis(0.5),
+                    percentileMillis(0.99),
+                    percentileMillis(0.999),
+                    percentileMillis(1),
+                    errors,
+                    statuses);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.tech_opdracht;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service hot paths over synthetic family graphs
+ * Run a subset with e.g. {@code -Djmh.args="PeopleServiceBenchmark -p people=10000 -rf json -rff target/jmh-result.json"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class PeopleServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    int people;
+
+    @Param({"GLOBAL", "STRIPED", "SHARDED", "SINGLE_WRITER"})
+    ConcurrencyMode concurrency;
+
+    PeopleService service;
+    MutationExecutor executor;
+    List<Person> records;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final var repository = new PeopleRepository();
+        final var locks = new PersonLocks(concurrency, 1024);
+
+        executor = switch (concurrency) {
+            case SHARDED -> new ShardedMutationExecutor(Runtime.getRuntime().availableProcessors(), repository, locks);
+            case SINGLE_WRITER -> new SingleWriterMutationExecutor(4096, 256, () -> {});
+            default -> MutationExecutor.DIRECT;
+        };
+        service = new PeopleService(repository, locks, Clock.systemDefaultZone(), MutationLog.NONE, PeopleMetrics.none(), executor);
+        records = SyntheticFamilies.generate(people, 0.3, 42);
+        service.addOrUpdatePeople(records);
+    }
+
+    @TearDown(Level.Iteration)
+    public void compact() {
+        service.compactTombstones(Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (executor instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    public void addOrUpdatePerson() {
+        service.addOrUpdatePerson(randomRecord());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void addOrUpdatePersonMultiThreaded() {
+        service.addOrUpdatePerson(randomRecord());
+    }
+
+    /**
+     * Re-sends of the stored record, which the service skips before they reach the executor
+     */
+    @Benchmark
+    public void resendUnchanged() {
+        service.addOrUpdatePerson(resentRecord());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void resendUnchangedMultiThreaded() {
+        service.addOrUpdatePerson(resentRecord());
+    }
+
+    @Benchmark
+    public Collection<Person> getMatchingPeople() {
+        return service.getMatchingPeople();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Collection<Person> getMatchingPeopleMultiThreaded() {
+        return service.getMatchingPeople();
+    }
+
+    /**
+     * Deletes a person and restores it, so the graph stays the same size
+     */
+    @Benchmark
+    public void deletePerson() {
+        final var person = randomRecord();
+
+        service.deletePerson(person);
+        service.addOrUpdatePerson(person);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void deletePersonMultiThreaded() {
+        final var person = randomRecord();
+
+        service.deletePerson(person);
+        service.addOrUpdatePerson(person);
+    }
+
+    /**
+     * Full re-evaluation as after recovery, only the candidates from the shape index are visited
+     */
+    @Benchmark
+    public void rebuild() {
+        service.rebuild();
+    }
+
+    /**
+     * A known record with a new name, so it is applied and evaluated rather than skipped as unchanged
+     * Only the name changes, the graph and which families match stay the same.
+     */
+    private Person randomRecord() {
+        final var random = ThreadLocalRandom.current();
+        final var person = records.get(random.nextInt(records.size())).copy();
+
+        person.setName("person " + person.getId() + " " + random.nextInt());
+
+        return person;
+    }
+
+    /**
+     * A re-send of a known record, as a fresh object like a request would be
+     */
+    private Person resentRecord() {
+        return records.get(ThreadLocalRandom.current().nextInt(records.size())).copy();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.tech_opdracht;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion between the request/response DTOs and the domain model, and decoding a request body
+ * Run with {@code -prof gc} to compare the garbage per decoded request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonDtoBenchmark {
+
+    final ObjectMapper viaDto = new ObjectMapper().registerModule(new JavaTimeModule());
+    final ObjectMapper direct = new ObjectMapper()
+            .registerModule(new SimpleModule().addDeserializer(Person.class, new PersonJsonDeserializer()));
+
+    PersonDTO dto;
+    Person person;
+    byte[] json;
+
+    @Setup
+    public void setUp() {
+        dto = new PersonDTO(
+                42,
+                "Ada lovelace",
+                LocalDate.of(1980, 12, 10),
+                new PersonReferenceDTO(1),
+                new PersonReferenceDTO(2),
+                new PersonReferenceDTO(3),
+                List.of(new PersonReferenceDTO(77), new PersonReferenceDTO(78), new PersonReferenceDTO(79))
+        );
+        person = dto.toPerson();
+        json = """
+                {"id": 42, "name": "Ada lovelace", "birthDate": "1980-12-10", "parent1": {"id": 1}, "parent2": {"id": 2},
+                 "partner": {"id": 3}, "children": [{"id": 77}, {"id": 78}, {"id": 79}]}
+                """.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Person decodeViaDto() throws IOException {
+        return viaDto.readValue(json, PersonDTO.class).toPerson();
+    }
+
+    @Benchmark
+    public Person decodeDirect() throws IOException {
+        return direct.readValue(json, Person.class);
+    }
+
+    @Benchmark
+    public Person toPerson() {
+        return dto.toPerson();
+    }
+
+    @Benchmark
+    public PersonDTO from() {
+        return PersonDTO.from(person);
+    }
+}
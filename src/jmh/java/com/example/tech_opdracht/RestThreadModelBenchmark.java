@@ -0,0 +1,102 @@
+package com.example.tech_opdracht;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end POST /api/v1/people on platform versus virtual request threads at high concurrency
+ * Sample time reports the percentiles (p99 included) next to the throughput run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Threads(1000)
+public class RestThreadModelBenchmark {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final int FAMILIES = 100_000;
+
+    @Param({"false", "true"})
+    boolean virtualThreads;
+
+    @Param({"GLOBAL", "STRIPED"})
+    ConcurrencyMode concurrency;
+
+    ConfigurableApplicationContext context;
+    OkHttpClient client;
+    String url;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SpringApplication.run(TechOpdrachtApplication.class,
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--people.concurrency.mode=" + concurrency.name().toLowerCase(),
+                "--logging.level.root=warn");
+        url = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/api/v1/people";
+
+        final var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+        client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(2_000, 5, TimeUnit.MINUTES))
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        context.close();
+    }
+
+    /**
+     * A new name on every request, so it is applied and evaluated rather than skipped as an unchanged re-send
+     */
+    @Benchmark
+    public int postPerson() throws IOException {
+        final var random = ThreadLocalRandom.current();
+        final var base = random.nextInt(FAMILIES) * 5;
+        final var json = """
+                {"id": %d, "name": "parent %d", "birthDate": "1980-01-01", "partner": {"id": %d},
+                 "parent1": {"id": %d}, "parent2": {"id": %d},
+                 "children": [{"id": %d}, {"id": %d}, {"id": %d}]}
+                """.formatted(base, random.nextInt(), base + 1, FAMILIES * 5 + base, FAMILIES * 5 + base + 1, base + 2, base + 3, base + 4);
+
+        final var request = new Request.Builder().url(url).post(RequestBody.create(json, JSON)).build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.tech_opdracht;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates households of two partners and three children
+ * A share of the households has a minor child and matches the pattern, the others only have adults.
+ */
+final class SyntheticFamilies {
+    static final int FAMILY_SIZE = 5;
+
+    private SyntheticFamilies() {
+    }
+
+    static List<Person> generate(int people, double matchingShare, long seed) {
+        final var random = new Random(seed);
+        final var today = LocalDate.now();
+        final var result = new ArrayList<Person>(people);
+
+        for (int base = 0; base + FAMILY_SIZE <= people; base += FAMILY_SIZE) {
+            final var children = Set.of(base + 2, base + 3, base + 4);
+            final var matching = random.nextDouble() < matchingShare;
+
+            result.add(parent(base, base + 1, children, today.minusYears(30 + random.nextInt(20))));
+            result.add(parent(base + 1, base, children, today.minusYears(30 + random.nextInt(20))));
+
+            for (final var childId : children) {
+                final var age = matching ? random.nextInt(18) : 18 + random.nextInt(10);
+                final var child = new Person(childId);
+                child.setName("child " + childId);
+                child.setBirthDate(today.minusYears(age).minusDays(random.nextInt(365)));
+                child.setParentIds(Set.of(base, base + 1));
+                result.add(child);
+            }
+        }
+
+        return result;
+    }
+
+    private static Person parent(int id, int partnerId, Set<Integer> children, LocalDate birthDate) {
+        final var person = new Person(id);
+        person.setName("parent " + id);
+        person.setBirthDate(birthDate);
+        person.setPartnerId(partnerId);
+        person.setChildrenIds(children);
+
+        return person;
+    }
+}
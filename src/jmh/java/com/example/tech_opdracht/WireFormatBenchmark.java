@@ -0,0 +1,117 @@
+package com.example.tech_opdracht;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON versus {@link PeopleWireFormat}: parsing a request body into a person and serializing a match list
+ * The {@code bytes} counter is the encoded size per operation, the request body or the whole list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"100", "10000"})
+    int matches;
+
+    /**
+     * Configured like the application's ObjectMapper, dates as ISO strings and requests read by {@link PersonJsonDeserializer}
+     */
+    final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .registerModule(new SimpleModule().addDeserializer(Person.class, new PersonJsonDeserializer()))
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    List<Person> people;
+    byte[] jsonRequest;
+    byte[] binaryRequest;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        /**
+         * Constant per benchmark, so the last encoded size is the size
+         */
+        public long bytes;
+
+        void record(int size) {
+            bytes = size;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        people = SyntheticFamilies.generate(matches, 1, 42);
+
+        final var request = people.getFirst();
+        jsonRequest = objectMapper.writeValueAsBytes(PersonDTO.from(request));
+
+        final var binary = new ByteArrayOutputStream();
+        PeopleWireFormat.write(request, binary);
+        binaryRequest = binary.toByteArray();
+    }
+
+    @Benchmark
+    public Person parseJson(Size size) throws IOException {
+        size.record(jsonRequest.length);
+        return objectMapper.readValue(jsonRequest, Person.class);
+    }
+
+    @Benchmark
+    public Person parseBinary(Size size) throws IOException {
+        size.record(binaryRequest.length);
+        return PeopleWireFormat.readPerson(new ByteArrayInputStream(binaryRequest));
+    }
+
+    @Benchmark
+    public int serializeJson(Size size) throws IOException {
+        final var out = new ByteArrayOutputStream();
+
+        try (final var generator = objectMapper.createGenerator(out)) {
+            generator.writeStartArray();
+            for (final var person : people) {
+                generator.writeObject(PersonDTO.from(person));
+            }
+            generator.writeEndArray();
+        }
+
+        size.record(out.size());
+        return out.size();
+    }
+
+    @Benchmark
+    public int serializeBinary(Size size) throws IOException {
+        final var out = new ByteArrayOutputStream();
+
+        for (final var person : people) {
+            PeopleWireFormat.write(person, out);
+        }
+
+        size.record(out.size());
+        return out.size();
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.tech_opdracht;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * Moves the service to the next day, so families stop matching when their last minor turns 18
+ * without any write happening
+ */
+@Component
+public class AgeThresholdScheduler {
+    private final PeopleService service;
+    private final Clock clock;
+
+    public AgeThresholdScheduler(
+            PeopleService service,
+            Clock clock
+    ) {
+        this.service = service;
+        this.clock = clock;
+    }
+
+    @Scheduled(cron = "${people.age-threshold.cron:0 0 0 * * *}")
+    public void advance() {
+        service.advanceToday(LocalDate.now(clock));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.tech_opdracht;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Calls between the instances of a partitioned deployment, see {@link HttpPeopleCluster}
+ * Only for the other instances, these endpoints should not be reachable from outside the cluster.
+ */
+@RestController
+@RequestMapping("/internal/v1")
+@ConditionalOnProperty(name = "people.cluster.nodes")
+public class ClusterController {
+
+    final PeopleService service;
+    final MatchListCache matchList;
+
+    public ClusterController(
+            PeopleService service,
+            MatchListCache matchList
+    ) {
+        this.service = service;
+        this.matchList = matchList;
+    }
+
+    @PostMapping("/people")
+    public void addOrUpdatePerson(@RequestBody ClusterPersonDTO dto) {
+        service.addOrUpdatePerson(dto.toPerson());
+    }
+
+    @DeleteMapping("/people/{id}")
+    public void deletePerson(@PathVariable int id) {
+        service.deletePerson(new Person(id));
+    }
+
+    @GetMapping("/people/{id}")
+    public ResponseEntity<ClusterPersonDTO> getPerson(@PathVariable int id) {
+        return ResponseEntity.of(service.getOwnedPerson(id).map(ClusterPersonDTO::from));
+    }
+
+    @PostMapping("/relationships")
+    public void changeRelationships(@RequestBody List<RelationshipChange> changes) {
+        service.applyRelationshipChanges(changes);
+    }
+
+    @PostMapping("/reevaluate")
+    public void reevaluate(@RequestBody List<Integer> ids) {
+        service.reevaluateOwned(ids);
+    }
+
+    @GetMapping("/matches/summary")
+    public MatchSummary matchSummary() {
+        return service.localMatchSummary();
+    }
+
+    /**
+     * The matches of this instance only, in id order
+     */
+    @GetMapping("/matches")
+    public ResponseEntity<StreamingResponseBody> matches(@RequestParam(required = false) Integer cursor) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> matchList.write(service.localMatchingPeople(cursor), ClusterPersonDTO::from, out));
+    }
+}
+
+/**
+ * A person as stored by its owner, with plain ids for every relationship
+ */
+record ClusterPersonDTO(
+        int id,
+        String name,
+        LocalDate birthDate,
+        Integer partnerId,
+        List<Integer> parentIds,
+        List<Integer> childrenIds
+) {
+    static ClusterPersonDTO from(Person person) {
+        return new ClusterPersonDTO(
+                person.getId(),
+                person.getName(),
+                person.getBirthDate(),
+                person.getPartnerId().orElse(null),
+                List.copyOf(person.getParentIds()),
+                List.copyOf(person.getChildrenIds())
+        );
+    }
+
+    Person toPerson() {
+        final var person = new Person(id);
+        person.setName(name);
+        person.setBirthDate(birthDate);
+        person.setPartnerId(partnerId);
+        person.setParentIds(Set.copyOf(parentIds));
+        person.setChildrenIds(Set.copyOf(childrenIds));
+
+        return person;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.tech_opdracht;
+
+import java.util.ArrayList;
+import java.util.function.Predicate;
+
+/**
+ * A {@link PatternDefinition} turned into the checks it needs, cheapest first
+ * Checks that only look at the person run before anything that needs the children looked up.
+ */
+final class CompiledPattern {
+
+    /**
+     * A check on the resolved children, given the epoch day after which a child is a minor
+     */
+    @FunctionalInterface
+    interface ChildrenCheck {
+        boolean test(Neighbourhood neighbourhood, Person[] children, long minorCutoffEpochDay);
+    }
+
+    private final PatternDefinition definition;
+    private final Predicate<Neighbourhood> personCheck;
+    private final ChildrenCheck[] childrenChecks;
+
+    private CompiledPattern(PatternDefinition definition, Predicate<Neighbourhood> personCheck, ChildrenCheck[] childrenChecks) {
+        this.definition = definition;
+        this.personCheck = personCheck;
+        this.childrenChecks = childrenChecks;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the definition can never be satisfied or is incomplete
+     */
+    static CompiledPattern compile(PatternDefinition definition) {
+        if (definition.name() == null || definition.name().isBlank()) {
+            throw new IllegalArgumentException("a pattern needs a name");
+        }
+        if (definition.partner() == null) {
+            throw new IllegalArgumentException("partner must be REQUIRED, ABSENT or ANY");
+        }
+        if (definition.minChildren() < 0 || definition.maxChildren() != null && definition.maxChildren() < definition.minChildren()) {
+            throw new IllegalArgumentException("children range is empty");
+        }
+        if (definition.childrenShareThePartner() && definition.partner() != PatternDefinition.PartnerRule.REQUIRED) {
+            throw new IllegalArgumentException("children can only share the partner when a partner is required");
+        }
+        if (definition.minMinorChildren() < 0 || definition.hasAgeRequirement() && definition.minorAge() <= 0) {
+            throw new IllegalArgumentException("minor age and count must be positive");
+        }
+        if (definition.maxChildren() != null && definition.minMinorChildren() > definition.maxChildren()) {
+            throw new IllegalArgumentException("more minors required than children allowed");
+        }
+
+        Predicate<Neighbourhood> personCheck = switch (definition.partner()) {
+            case REQUIRED -> Neighbourhood::partnerPresent;
+            case ABSENT -> neighbourhood -> !neighbourhood.hasPartner();
+            case ANY -> _ -> true;
+        };
+
+        final int minChildren = Math.max(definition.minChildren(), definition.minMinorChildren());
+        final var maxChildren = definition.maxChildren();
+
+        if (maxChildren != null && maxChildren == minChildren) {
+            personCheck = personCheck.and(neighbourhood -> neighbourhood.childCount() == minChildren);
+        } else {
+            if (minChildren > 0) {
+                personCheck = personCheck.and(neighbourhood -> neighbourhood.childCount() >= minChildren);
+            }
+            if (maxChildren != null) {
+                personCheck = personCheck.and(neighbourhood -> neighbourhood.childCount() <= maxChildren);
+            }
+        }
+
+        final var childrenChecks = new ArrayList<ChildrenCheck>();
+
+        if (definition.childrenShareThePartner()) {
+            childrenChecks.add(CompiledPattern::childrenShareThePartner);
+        }
+
+        if (definition.hasAgeRequirement()) {
+            final var minMinors = definition.minMinorChildren();
+            childrenChecks.add((_, children, cutoff) -> countMinors(children, cutoff, minMinors) >= minMinors);
+        }
+
+        return new CompiledPattern(definition, personCheck, childrenChecks.toArray(ChildrenCheck[]::new));
+    }
+
+    PatternDefinition definition() {
+        return definition;
+    }
+
+    /**
+     * Cheap part of the pattern, answers without looking up the children
+     */
+    boolean personMatches(Neighbourhood neighbourhood) {
+        return personCheck.test(neighbourhood);
+    }
+
+    /**
+     * Full pattern, only call when {@link #personMatches} holds
+     */
+    boolean matches(Neighbourhood neighbourhood, long minorCutoffEpochDay) {
+        if (childrenChecks.length == 0) {
+            return true;
+        }
+
+        final var children = neighbourhood.children();
+        if (children == null) {
+            return false;
+        }
+
+        for (final var check : childrenChecks) {
+            if (!check.test(neighbourhood, children, minorCutoffEpochDay)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean childrenShareThePartner(Neighbourhood neighbourhood, Person[] children, long minorCutoffEpochDay) {
+        final var partnerId = neighbourhood.partnerId();
+
+        for (final var child : children) {
+            if (!child.getParentIds().contains(partnerId)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int countMinors(Person[] children, long minorCutoffEpochDay, int enough) {
+        int minors = 0;
+
+        for (final var child : children) {
+            if (child.isBornAfter(minorCutoffEpochDay) && ++minors == enough) {
+                break;
+            }
+        }
+
+        return minors;
+    }
+}
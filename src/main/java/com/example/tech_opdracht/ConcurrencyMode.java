@@ -0,0 +1,23 @@
+package com.example.tech_opdracht;
+
+/**
+ * How mutations on the people graph are serialized
+ */
+public enum ConcurrencyMode {
+    /**
+     * Every mutation takes the same lock, one write at a time
+     */
+    GLOBAL,
+    /**
+     * A mutation only locks the stripes of the person ids it touches
+     */
+    STRIPED,
+    /**
+     * Striped locks, and every connected family is written by one of a fixed number of shard threads
+     */
+    SHARDED,
+    /**
+     * Striped locks, and every mutation is queued for one writer thread that applies and evaluates them in batches
+     */
+    SINGLE_WRITER
+}
@@ -0,0 +1,341 @@
+package com.example.tech_opdracht;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Incremental union-find over partner and parent/child edges
+ * Components only ever merge here. Removing a relationship can split a family, but keeping it
+ * merged is always safe, it only costs parallelism until the next {@link #rebuild}.
+ * <p>
+ * Ids live in an open-addressing table of primitive arrays, so a union allocates nothing and holds the
+ * lock only for a few probes. Smaller components are linked under larger ones and paths are halved on
+ * every find, so trees stay shallow. Deleted people are dropped from the table as soon as no other id
+ * links through them, rather than only at the next rebuild.
+ */
+final class FamilyComponents {
+    private final ReentrantLock lock = new ReentrantLock();
+    private Table table = new Table(1024);
+
+    /**
+     * Merge the components of the given ids
+     *
+     * @return the representative of the merged component
+     */
+    int union(Collection<Integer> ids) {
+        lock.lock();
+        try {
+            return table.union(ids);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget a deleted person, its family keeps any links that still run through it
+     */
+    void remove(int id) {
+        lock.lock();
+        try {
+            table.remove(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recompute the components from the current people, undoing merges of families that split since
+     * Only call while no writes can happen.
+     */
+    void rebuild(Collection<Person> people) {
+        final var rebuilt = new Table(Math.max(1024, people.size() * 2));
+        final var family = new ArrayList<Integer>();
+
+        for (final var person : people) {
+            family.clear();
+            family.add(person.getId());
+
+            for (final var relatedId : person.relatedIds()) {
+                family.add(relatedId);
+            }
+
+            rebuilt.union(family);
+        }
+
+        lock.lock();
+        try {
+            table = rebuilt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int componentCount() {
+        lock.lock();
+        try {
+            return table.componentCount();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ids in the table, deleted ones that others still link through included
+     */
+    int size() {
+        lock.lock();
+        try {
+            return table.count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Linear probing over parallel arrays, removal shifts entries back so no tombstones are left
+     */
+    private static final class Table {
+        private int[] ids;
+        private int[] parents;
+        /**
+         * Live members of the component, only kept for roots
+         */
+        private int[] sizes;
+        /**
+         * Entries whose parent is this entry, a deleted entry is dropped once it has none
+         */
+        private int[] children;
+        private boolean[] used;
+        private boolean[] deleted;
+        private int count;
+
+        Table(int capacity) {
+            allocate(Integer.highestOneBit(Math.max(16, capacity - 1)) << 1);
+        }
+
+        /**
+         * Slots move when the table grows or an entry is dropped, so they are looked up again after every change
+         */
+        int union(Iterable<Integer> members) {
+            var root = 0;
+            var first = true;
+
+            for (final int id : members) {
+                final var slot = slotOf(id);
+
+                if (slot < 0) {
+                    insert(id);
+                } else if (deleted[slot]) {
+                    deleted[slot] = false;
+                    sizes[slotOf(find(id))]++;
+                }
+
+                final var other = find(id);
+
+                if (first) {
+                    root = other;
+                    first = false;
+                } else if (other != root) {
+                    final var rootSlot = slotOf(root);
+                    final var otherSlot = slotOf(other);
+
+                    // The smaller component goes under the larger one
+                    if (sizes[otherSlot] > sizes[rootSlot]) {
+                        link(rootSlot, otherSlot);
+                        root = other;
+                    } else {
+                        link(otherSlot, rootSlot);
+                    }
+                }
+            }
+
+            return root;
+        }
+
+        void remove(int id) {
+            final var slot = slotOf(id);
+
+            if (slot < 0 || deleted[slot]) {
+                return;
+            }
+
+            sizes[slotOf(find(id))]--;
+            deleted[slotOf(id)] = true;
+            release(id);
+        }
+
+        int componentCount() {
+            var components = 0;
+
+            for (int slot = 0; slot < ids.length; slot++) {
+                if (used[slot] && parents[slot] == ids[slot] && sizes[slot] > 0) {
+                    components++;
+                }
+            }
+
+            return components;
+        }
+
+        private void link(int childSlot, int rootSlot) {
+            parents[childSlot] = ids[rootSlot];
+            children[rootSlot]++;
+            sizes[rootSlot] += sizes[childSlot];
+            sizes[childSlot] = 0;
+        }
+
+        /**
+         * Path halving keeps the trees shallow without recursion
+         */
+        private int find(int id) {
+            var node = id;
+            var parent = parents[slotOf(node)];
+
+            while (parent != node) {
+                final var parentSlot = slotOf(parent);
+                final var grandparent = parents[parentSlot];
+
+                if (grandparent != parent) {
+                    parents[slotOf(node)] = grandparent;
+                    children[slotOf(grandparent)]++;
+                    children[parentSlot]--;
+                    release(parent);
+                }
+
+                node = grandparent;
+                parent = parents[slotOf(node)];
+            }
+
+            return node;
+        }
+
+        /**
+         * Drop a deleted entry that nothing links through anymore, and so on up its path
+         */
+        private void release(int id) {
+            var node = id;
+
+            while (true) {
+                final var slot = slotOf(node);
+
+                if (!deleted[slot] || children[slot] > 0) {
+                    return;
+                }
+
+                final var parent = parents[slot];
+                delete(slot);
+
+                if (parent == node) {
+                    return;
+                }
+
+                children[slotOf(parent)]--;
+                node = parent;
+            }
+        }
+
+        private int slotOf(int id) {
+            final var mask = ids.length - 1;
+
+            for (int slot = hash(id) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (ids[slot] == id) {
+                    return slot;
+                }
+            }
+
+            return -1;
+        }
+
+        private void insert(int id) {
+            if (count * 4 >= ids.length * 3) {
+                grow();
+            }
+
+            final var mask = ids.length - 1;
+            var slot = hash(id) & mask;
+
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+
+            used[slot] = true;
+            ids[slot] = id;
+            parents[slot] = id;
+            sizes[slot] = 1;
+            children[slot] = 0;
+            deleted[slot] = false;
+            count++;
+        }
+
+        private void delete(int slot) {
+            final var mask = ids.length - 1;
+            var hole = slot;
+
+            // Move back every later entry of the run that may no longer be found past the hole
+            for (int next = (hole + 1) & mask; used[next]; next = (next + 1) & mask) {
+                final var home = hash(ids[next]) & mask;
+
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    move(next, hole);
+                    hole = next;
+                }
+            }
+
+            used[hole] = false;
+            count--;
+        }
+
+        private void move(int from, int to) {
+            ids[to] = ids[from];
+            parents[to] = parents[from];
+            sizes[to] = sizes[from];
+            children[to] = children[from];
+            deleted[to] = deleted[from];
+        }
+
+        private void grow() {
+            final var oldIds = ids;
+            final var oldParents = parents;
+            final var oldSizes = sizes;
+            final var oldChildren = children;
+            final var oldUsed = used;
+            final var oldDeleted = deleted;
+
+            allocate(oldIds.length * 2);
+
+            final var mask = ids.length - 1;
+
+            for (int old = 0; old < oldIds.length; old++) {
+                if (!oldUsed[old]) {
+                    continue;
+                }
+
+                var slot = hash(oldIds[old]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+
+                used[slot] = true;
+                ids[slot] = oldIds[old];
+                parents[slot] = oldParents[old];
+                sizes[slot] = oldSizes[old];
+                children[slot] = oldChildren[old];
+                deleted[slot] = oldDeleted[old];
+            }
+        }
+
+        private void allocate(int capacity) {
+            ids = new int[capacity];
+            parents = new int[capacity];
+            sizes = new int[capacity];
+            children = new int[capacity];
+            used = new boolean[capacity];
+            deleted = new boolean[capacity];
+        }
+
+        private static int hash(int id) {
+            final var h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.tech_opdracht;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Partitions people by id over a fixed list of instances, talking to the others over HTTP
+ * Person {@code id} is owned by instance {@code floorMod(id, instances)}. Every instance is
+ * configured with the same list and its own position in it.
+ * <p>
+ * Relationship changes on other instances are applied after the local write committed and
+ * released its locks, so two instances waiting on each other can never deadlock. The price is
+ * that the two sides of a relationship spanning instances are not changed atomically.
+ */
+public class HttpPeopleCluster implements PeopleCluster {
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final List<HttpUrl> nodes;
+    private final int self;
+    private final OkHttpClient client;
+    private final ObjectMapper objectMapper;
+
+    public HttpPeopleCluster(List<String> nodes, int self, ObjectMapper objectMapper) {
+        if (self < 0 || self >= nodes.size()) {
+            throw new IllegalArgumentException("people.cluster.self must be a position in people.cluster.nodes");
+        }
+
+        this.nodes = nodes.stream().map(HttpUrl::get).toList();
+        this.self = self;
+        this.objectMapper = objectMapper;
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public boolean owns(int id) {
+        return ownerOf(id) == self;
+    }
+
+    @Override
+    public void forward(PersonMutation mutation) {
+        final var node = ownerOf(mutation.id());
+
+        switch (mutation) {
+            case PersonMutation.Put(var person) -> call(post(url(node, "people"), ClusterPersonDTO.from(person)), _ -> null);
+            case PersonMutation.Delete(var id) -> call(new Request.Builder().url(url(node, "people", String.valueOf(id))).delete().build(), _ -> null);
+        }
+    }
+
+    @Override
+    public Optional<Person> get(int id) {
+        final var request = new Request.Builder().url(url(ownerOf(id), "people", String.valueOf(id))).get().build();
+
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() == 404) {
+                return Optional.empty();
+            }
+
+            return Optional.of(read(response, ClusterPersonDTO.class).toPerson());
+        } catch (IOException e) {
+            throw new UncheckedIOException("reading person " + id + " from its owner failed", e);
+        }
+    }
+
+    @Override
+    public void changeRelationships(Collection<RelationshipChange> changes) {
+        final var byNode = new HashMap<Integer, List<RelationshipChange>>();
+
+        for (final var change : changes) {
+            byNode.computeIfAbsent(ownerOf(change.id()), _ -> new ArrayList<>()).add(change);
+        }
+
+        byNode.forEach((node, forNode) -> call(post(url(node, "relationships"), forNode), _ -> null));
+    }
+
+    @Override
+    public void reevaluate(Collection<Integer> ids) {
+        final var byNode = new HashMap<Integer, List<Integer>>();
+
+        for (final var id : ids) {
+            byNode.computeIfAbsent(ownerOf(id), _ -> new ArrayList<>()).add(id);
+        }
+
+        byNode.forEach((node, forNode) -> call(post(url(node, "reevaluate"), forNode), _ -> null));
+    }
+
+    @Override
+    public List<MatchSummary> remoteMatchSummaries() {
+        final var summaries = new ArrayList<MatchSummary>();
+
+        for (int node = 0; node < nodes.size(); node++) {
+            if (node != self) {
+                final var request = new Request.Builder().url(url(node, "matches", "summary")).get().build();
+                summaries.add(call(request, response -> read(response, MatchSummary.class)));
+            }
+        }
+
+        return summaries;
+    }
+
+    @Override
+    public List<Stream<Person>> remoteMatches(Integer cursor) {
+        final var streams = new ArrayList<Stream<Person>>();
+
+        for (int node = 0; node < nodes.size(); node++) {
+            if (node != self) {
+                final var url = url(node, "matches").newBuilder();
+
+                if (cursor != null) {
+                    url.addQueryParameter("cursor", cursor.toString());
+                }
+
+                streams.add(streamMatches(new Request.Builder().url(url.build()).get().build()));
+            }
+        }
+
+        return streams;
+    }
+
+    /**
+     * Matches are parsed one at a time while the response body streams in
+     */
+    private Stream<Person> streamMatches(Request request) {
+        try {
+            final var response = client.newCall(request).execute();
+
+            if (!response.isSuccessful()) {
+                response.close();
+                throw new IllegalStateException(request.url() + " answered " + response.code());
+            }
+
+            final var records = objectMapper.readerFor(ClusterPersonDTO.class).<ClusterPersonDTO>readValues(response.body().byteStream());
+
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .map(ClusterPersonDTO::toPerson)
+                    .onClose(response::close);
+        } catch (IOException e) {
+            throw new UncheckedIOException("reading matches from " + request.url() + " failed", e);
+        }
+    }
+
+    private int ownerOf(int id) {
+        return Math.floorMod(id, nodes.size());
+    }
+
+    private HttpUrl url(int node, String... segments) {
+        final var url = nodes.get(node).newBuilder().addPathSegment("internal").addPathSegment("v1");
+
+        for (final var segment : segments) {
+            url.addPathSegment(segment);
+        }
+
+        return url.build();
+    }
+
+    private Request post(HttpUrl url, Object body) {
+        try {
+            return new Request.Builder().url(url).post(RequestBody.create(objectMapper.writeValueAsBytes(body), JSON)).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T call(Request request, Function<Response, T> handler) {
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IllegalStateException(request.method() + " " + request.url() + " answered " + response.code());
+            }
+
+            return handler.apply(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(request.method() + " " + request.url() + " failed", e);
+        }
+    }
+
+    private <T> T read(Response response, Class<T> type) {
+        try {
+            return objectMapper.readValue(response.body().byteStream(), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.tech_opdracht;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of person ids backed by a small int array
+ * Adjacency lists are tiny (0-2 parents, a handful of children), so a linear scan beats hashing
+ * and a copy on write is cheap. Being immutable it can be handed out as a read-only view.
+ */
+public final class IdSet extends AbstractSet<Integer> {
+    public static final IdSet EMPTY = new IdSet(new int[0]);
+    /**
+     * Recently created single-id sets by id, direct-mapped, so siblings and co-parents share them
+     * Races only lose sharing: sets are immutable and their array is final, so any thread may publish one.
+     */
+    private static final IdSet[] SINGLES = new IdSet[4096];
+
+    private final int[] ids;
+
+    private IdSet(int[] ids) {
+        this.ids = ids;
+    }
+
+    public static IdSet of(Collection<Integer> ids) {
+        if (ids instanceof IdSet set) {
+            return set;
+        }
+
+        if (ids.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new IdSet(ids.stream().mapToInt(Integer::intValue).distinct().toArray());
+    }
+
+    /**
+     * The first {@code length} ids of a buffer, copied so the buffer can be reused
+     */
+    public static IdSet of(int[] ids, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        if (length == 1) {
+            return single(ids[0]);
+        }
+
+        final var result = new int[length];
+        var size = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (!contains(result, size, ids[i])) {
+                result[size++] = ids[i];
+            }
+        }
+
+        return new IdSet(size == length ? result : Arrays.copyOf(result, size));
+    }
+
+    private static boolean contains(int[] ids, int size, int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A set holding only {@code id}, shared with earlier callers when still cached
+     */
+    public static IdSet single(int id) {
+        final var slot = id & (SINGLES.length - 1);
+        final var cached = SINGLES[slot];
+
+        if (cached != null && cached.ids[0] == id) {
+            return cached;
+        }
+
+        final var created = new IdSet(new int[]{id});
+        SINGLES[slot] = created;
+
+        return created;
+    }
+
+    public IdSet with(int id) {
+        if (this == EMPTY) {
+            return single(id);
+        }
+
+        if (contains(id)) {
+            return this;
+        }
+
+        final var result = Arrays.copyOf(ids, ids.length + 1);
+        result[ids.length] = id;
+
+        return new IdSet(result);
+    }
+
+    public IdSet without(int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                if (ids.length == 1) {
+                    return EMPTY;
+                }
+
+                final var result = new int[ids.length - 1];
+                System.arraycopy(ids, 0, result, 0, i);
+                System.arraycopy(ids, i + 1, result, i, ids.length - i - 1);
+
+                return new IdSet(result);
+            }
+        }
+
+        return this;
+    }
+
+    public int get(int index) {
+        return ids[index];
+    }
+
+    public boolean contains(int id) {
+        for (final var candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Rough heap footprint, the shared empty set costs nothing
+     */
+    public long estimatedSize() {
+        return this == EMPTY ? 0 : 16 + 16 + 4L * ids.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer id && contains(id.intValue());
+    }
+
+    /**
+     * Same value as {@link AbstractSet#hashCode()}, without boxing every id
+     */
+    @Override
+    public int hashCode() {
+        var hash = 0;
+
+        for (final var id : ids) {
+            hash += id;
+        }
+
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IdSet other) {
+            if (other.ids.length != ids.length) {
+                return false;
+            }
+
+            for (final var id : other.ids) {
+                if (!contains(id)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return super.equals(o);
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < ids.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (index >= ids.length) {
+                    throw new NoSuchElementException();
+                }
+
+                return ids[index++];
+            }
+        };
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.tech_opdracht;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes "entered" and "left" events to subscribers whenever a person starts or stops matching
+ * <p>
+ * Every event gets a sequence number and the last {@code people.events.history} events are kept,
+ * so a client reconnecting with the id of the last event it saw resumes without gaps.
+ * Each subscriber has a bounded buffer drained by its own virtual thread. A subscriber that falls
+ * behind is disconnected once its buffer is full, it can reconnect and resume from the history.
+ * When the history no longer reaches back far enough the client gets a "reset" event and has to
+ * fetch the full match list again.
+ */
+@Component
+public class MatchEventFeed implements MatchListener {
+    private static final Logger log = LoggerFactory.getLogger(MatchEventFeed.class);
+    private static final long HEARTBEAT_SECONDS = 15;
+
+    /**
+     * Sequence numbers restart with the process, the instance prefix makes old tokens resume with a reset
+     */
+    private final String instance = Long.toHexString(UUID.randomUUID().getMostSignificantBits());
+    private final MatchEvent[] history;
+    private final int bufferSize;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    /**
+     * Orders publishing against subscribing, so a new subscriber sees every event exactly once
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private long sequence;
+
+    public MatchEventFeed(
+            PeopleService service,
+            @Value("${people.events.history:65536}") int historySize,
+            @Value("${people.events.buffer:1024}") int bufferSize
+    ) {
+        this.history = new MatchEvent[historySize];
+        this.bufferSize = bufferSize;
+
+        service.addMatchListener(this);
+    }
+
+    @Override
+    public void matchChanged(int id, boolean matches) {
+        lock.lock();
+        try {
+            final var event = new MatchEvent(++sequence, id, matches);
+            history[(int) (event.sequence() % history.length)] = event;
+
+            for (final var subscriber : subscribers) {
+                if (!subscriber.events.offer(event)) {
+                    // Too slow, it gets what is buffered and can resume from the history after reconnecting
+                    subscribers.remove(subscriber);
+                    subscriber.overflowed = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param resumeToken id of the last event the client received, null to only get new events
+     */
+    public SseEmitter subscribe(String resumeToken) {
+        final var emitter = new SseEmitter(0L);
+        final var subscriber = new Subscriber(emitter, new ArrayBlockingQueue<>(bufferSize));
+        final boolean reset;
+        final long current;
+
+        lock.lock();
+        try {
+            current = sequence;
+            reset = resumeToken != null && !replay(resumeToken, subscriber.events);
+            subscribers.add(subscriber);
+        } finally {
+            lock.unlock();
+        }
+
+        final var sender = Thread.ofVirtual().name("match-events").start(() -> send(subscriber, reset, current));
+
+        emitter.onCompletion(() -> stop(subscriber, sender));
+        emitter.onTimeout(() -> stop(subscriber, sender));
+        emitter.onError(_ -> stop(subscriber, sender));
+
+        return emitter;
+    }
+
+    /**
+     * Open streams would otherwise hold up the graceful shutdown of the web server
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void closeAll() {
+        for (final var subscriber : subscribers) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+        }
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Queue the events after the token
+     *
+     * @return false when they are no longer all available
+     */
+    private boolean replay(String resumeToken, BlockingQueue<MatchEvent> events) {
+        final var separator = resumeToken.lastIndexOf('-');
+
+        if (separator < 0 || !resumeToken.substring(0, separator).equals(instance)) {
+            return false;
+        }
+
+        final long after;
+        try {
+            after = Long.parseLong(resumeToken.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        if (after > sequence || sequence - after > Math.min(history.length, bufferSize)) {
+            return false;
+        }
+
+        for (long next = after + 1; next <= sequence; next++) {
+            events.add(history[(int) (next % history.length)]);
+        }
+
+        return true;
+    }
+
+    private void send(Subscriber subscriber, boolean reset, long current) {
+        final var emitter = subscriber.emitter;
+
+        try {
+            // Gives the client a resume token before the first change
+            emitter.send(SseEmitter.event().id(token(current)).name(reset ? "reset" : "subscribed").data(""));
+
+            while (!Thread.currentThread().isInterrupted()) {
+                if (subscriber.overflowed && subscriber.events.isEmpty()) {
+                    emitter.complete();
+                    return;
+                }
+
+                final var event = subscriber.events.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+
+                if (event != null) {
+                    emitter.send(SseEmitter.event()
+                            .id(token(event.sequence()))
+                            .name(event.matches() ? "entered" : "left")
+                            .data("{\"id\":" + event.id() + "}"));
+                } else {
+                    // Finds clients that went away without closing the connection
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Match event subscriber disconnected", e);
+            subscribers.remove(subscriber);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stop(Subscriber subscriber, Thread sender) {
+        subscribers.remove(subscriber);
+        sender.interrupt();
+    }
+
+    private String token(long sequence) {
+        return instance + "-" + sequence;
+    }
+
+    record MatchEvent(long sequence, int id, boolean matches) {}
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final BlockingQueue<MatchEvent> events;
+        volatile boolean overflowed;
+
+        Subscriber(SseEmitter emitter, BlockingQueue<MatchEvent> events) {
+            this.emitter = emitter;
+            this.events = events;
+        }
+    }
+}
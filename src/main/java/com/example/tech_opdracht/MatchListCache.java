@@ -0,0 +1,200 @@
+package com.example.tech_opdracht;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Writes match lists as JSON or {@link PeopleWireFormat}, and caches the serialized list per match version and format
+ * Writes that leave the match list alone are answered without serializing it again.
+ * Lists larger than {@code people.response.cache-max-matches} are not cached but streamed on every request.
+ */
+@Component
+public class MatchListCache {
+
+    private final PeopleService service;
+    private final ObjectMapper objectMapper;
+    private final int maxCachedMatches;
+    private final Map<Format, AtomicReference<Entry>> cached = new EnumMap<>(Format.class);
+
+    public MatchListCache(
+            PeopleService service,
+            ObjectMapper objectMapper,
+            @Value("${people.response.cache-max-matches:10000}") int maxCachedMatches
+    ) {
+        this.service = service;
+        this.objectMapper = objectMapper;
+        this.maxCachedMatches = maxCachedMatches;
+
+        for (final var format : Format.values()) {
+            cached.put(format, new AtomicReference<>());
+        }
+    }
+
+    public Entry current(Format format) throws IOException {
+        // The version is read first, so the list serialized below is at least that new
+        final var summary = service.matchSummary();
+        final var version = summary.version();
+        final var cache = cached.get(format);
+        final var entry = cache.get();
+
+        if (entry != null && entry.version() == version && entry.instance().equals(summary.instance())) {
+            return entry;
+        }
+
+        final var count = summary.count();
+        // Versions restart at 0 with the process, the instance prefix keeps old ETags from matching
+        final var etag = "\"" + summary.instance() + "-" + version + format.etagSuffix + "\"";
+
+        if (count > maxCachedMatches) {
+            return new Entry(format, summary.instance(), version, etag, null, false);
+        }
+
+        final var body = new ByteArrayOutputStream();
+        write(service.matchingPeople(null), format, body);
+        final var fresh = new Entry(format, summary.instance(), version, etag, body.toByteArray(), count == 0);
+
+        // Never replace a newer entry with an older one, versions of another instance say nothing about age
+        cache.accumulateAndGet(fresh, (current, candidate) -> current == null
+                || !current.instance().equals(candidate.instance())
+                || current.version() < candidate.version() ? candidate : current);
+
+        return fresh;
+    }
+
+    /**
+     * Write the whole match list of an entry, from the cache when it was small enough
+     */
+    public void write(Entry entry, OutputStream out) throws IOException {
+        if (entry.body() != null) {
+            out.write(entry.body());
+        } else {
+            write(service.matchingPeople(null), entry.format(), out);
+        }
+    }
+
+    /**
+     * Write people in the given format, one at a time, and close the stream
+     */
+    public void write(Stream<Person> people, Format format, OutputStream out) throws IOException {
+        if (format == Format.JSON) {
+            write(people, out);
+            return;
+        }
+
+        try (people) {
+            final var buffered = new BufferedOutputStream(out);
+
+            for (final var person : (Iterable<Person>) people::iterator) {
+                PeopleWireFormat.write(person, buffered);
+            }
+
+            buffered.flush();
+        }
+    }
+
+    /**
+     * Write people as a JSON array, one at a time, and close the stream
+     */
+    public void write(Stream<Person> people, OutputStream out) throws IOException {
+        write(people, PersonDTO::from, out);
+    }
+
+    /**
+     * Write people as a JSON array of the given representation, one at a time, and close the stream
+     */
+    public void write(Stream<Person> people, Function<Person, ?> representation, OutputStream out) throws IOException {
+        try (people; final var generator = objectMapper.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartArray();
+
+            for (final var person : (Iterable<Person>) people::iterator) {
+                generator.writeObject(representation.apply(person));
+            }
+
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Representations of a match list, JSON unless the client asks for another one
+     */
+    public enum Format {
+        JSON(MediaType.APPLICATION_JSON, ""),
+        BINARY(PeopleWireFormat.MEDIA_TYPE, "-b");
+
+        private final MediaType mediaType;
+        private final String etagSuffix;
+
+        Format(MediaType mediaType, String etagSuffix) {
+            this.mediaType = mediaType;
+            this.etagSuffix = etagSuffix;
+        }
+
+        public MediaType mediaType() {
+            return mediaType;
+        }
+
+        /**
+         * The first format an Accept header names, wildcards and anything unknown fall back to JSON
+         */
+        public static Format negotiate(String accept) {
+            if (accept == null) {
+                return JSON;
+            }
+
+            try {
+                for (final var type : MediaType.parseMediaTypes(accept)) {
+                    if (type.equalsTypeAndSubtype(PeopleWireFormat.MEDIA_TYPE)) {
+                        return BINARY;
+                    } else if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                        return JSON;
+                    }
+                }
+            } catch (InvalidMediaTypeException e) {
+                return JSON;
+            }
+
+            return JSON;
+        }
+    }
+
+    /**
+     * @param instance together with the version identifies the list, see {@link MatchSummary}
+     * @param etag quoted strong entity tag of this version and format
+     * @param body the serialized match list, null when it is too large to cache
+     */
+    public record Entry(Format format, String instance, long version, String etag, byte[] body, boolean empty) {
+
+        /**
+         * Whether an If-None-Match header already names this version
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+
+            for (final var tag : ifNoneMatch.split(",")) {
+                final var trimmed = tag.trim();
+
+                if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.tech_opdracht;
+
+/**
+ * Told whenever a person starts or stops satisfying the default pattern
+ * Called while the person's lock is held, so the changes of one person arrive in order.
+ */
+@FunctionalInterface
+public interface MatchListener {
+
+    void matchChanged(int id, boolean matches);
+}
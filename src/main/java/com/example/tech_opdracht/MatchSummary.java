@@ -0,0 +1,7 @@
+package com.example.tech_opdracht;
+
+/**
+ * Version and size of a match list
+ * Equal instance and version mean an equal list. Versions restart with the process, the instance tells processes apart.
+ */
+public record MatchSummary(String instance, long version, int count) {}
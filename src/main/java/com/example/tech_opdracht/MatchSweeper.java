@@ -0,0 +1,35 @@
+package com.example.tech_opdracht;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically checks the match indexes against a full evaluation and repairs what drifted,
+ * for instance after an evaluation failed or a notification from another instance was lost
+ */
+@Component
+@ConditionalOnProperty(name = "people.sweep.enabled", havingValue = "true", matchIfMissing = true)
+public class MatchSweeper {
+    private static final Logger log = LoggerFactory.getLogger(MatchSweeper.class);
+
+    private final PeopleService service;
+
+    public MatchSweeper(PeopleService service) {
+        this.service = service;
+    }
+
+    @Scheduled(
+            initialDelayString = "${people.sweep.interval-ms:600000}",
+            fixedDelayString = "${people.sweep.interval-ms:600000}"
+    )
+    public void sweep() {
+        final var repaired = service.sweep();
+
+        if (repaired > 0) {
+            log.warn("Sweep re-evaluated {} people whose match index was out of date", repaired);
+        }
+    }
+}
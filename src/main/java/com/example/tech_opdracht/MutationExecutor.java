@@ -0,0 +1,51 @@
+package com.example.tech_opdracht;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decides which thread applies a mutation
+ */
+public interface MutationExecutor {
+    /**
+     * Apply every mutation on the calling thread
+     */
+    MutationExecutor DIRECT = new MutationExecutor() {
+        @Override
+        public <T> T execute(Collection<Integer> ids, Supplier<T> mutation) {
+            return mutation.get();
+        }
+    };
+
+    /**
+     * Apply a mutation and wait for it
+     *
+     * @param ids the ids the mutation touches
+     */
+    <T> T execute(Collection<Integer> ids, Supplier<T> mutation);
+
+    /**
+     * Apply a mutation whose evaluation may be deferred, and wait for it
+     * By default the mutation evaluates itself. Executors applying mutations in batches run {@code deferred}
+     * instead and pass the union of a whole batch to {@code evaluation} once, before any of its callers return.
+     *
+     * @param mutation applies and evaluates, returns the affected ids
+     * @param deferred only applies, returns the ids still to evaluate
+     */
+    default Set<Integer> execute(
+            Collection<Integer> ids,
+            Supplier<Set<Integer>> mutation,
+            Supplier<Set<Integer>> deferred,
+            Consumer<Set<Integer>> evaluation
+    ) {
+        return execute(ids, mutation);
+    }
+
+    /**
+     * A person was deleted, executors keeping track of ids can forget it
+     */
+    default void deleted(int id) {
+    }
+}
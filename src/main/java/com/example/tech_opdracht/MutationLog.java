@@ -0,0 +1,11 @@
+package com.example.tech_opdracht;
+
+/**
+ * Receives every mutation before it is applied, while the touched ids are locked
+ */
+@FunctionalInterface
+public interface MutationLog {
+    MutationLog NONE = _ -> {};
+
+    void append(PersonMutation mutation);
+}
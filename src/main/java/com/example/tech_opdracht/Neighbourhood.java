@@ -0,0 +1,64 @@
+package com.example.tech_opdracht;
+
+import java.util.Optional;
+import java.util.function.IntFunction;
+
+/**
+ * What patterns get to see of a person: collected once and shared by every registered pattern
+ * The children are only looked up when a pattern gets past the checks that do not need them.
+ */
+final class Neighbourhood {
+    private final Person person;
+    private final IntFunction<Optional<Person>> lookup;
+    private final boolean partnerPresent;
+    private Person[] children;
+
+    /**
+     * @param lookup finds a person by id, wherever it is stored
+     */
+    Neighbourhood(Person person, IntFunction<Optional<Person>> lookup) {
+        this.person = person;
+        this.lookup = lookup;
+        this.partnerPresent = person.hasPartner() && lookup.apply(person.partnerId()).isPresent();
+    }
+
+    boolean hasPartner() {
+        return person.hasPartner();
+    }
+
+    boolean partnerPresent() {
+        return partnerPresent;
+    }
+
+    int partnerId() {
+        return person.partnerId();
+    }
+
+    int childCount() {
+        return person.getChildrenIds().size();
+    }
+
+    /**
+     * @return the children, null when one of them is not known
+     */
+    Person[] children() {
+        if (children == null) {
+            final var ids = person.getChildrenIds();
+            final var resolved = new Person[ids.size()];
+
+            for (int i = 0; i < resolved.length; i++) {
+                final var child = lookup.apply(ids.get(i));
+
+                if (child.isEmpty()) {
+                    return null;
+                }
+
+                resolved[i] = child.get();
+            }
+
+            children = resolved;
+        }
+
+        return children;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.tech_opdracht;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * Evaluates patterns for many people at once, split into chunks over a fork-join pool
+ * Used for full passes (recovery, registering a pattern, consistency sweeps) against a snapshot.
+ * Every chunk writes only its own slice of the result, so the workers share nothing they write to.
+ */
+final class ParallelEvaluator implements AutoCloseable {
+    /**
+     * People per leaf task, large enough that the fork overhead disappears next to the lookups
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism worker threads, 0 to share the common pool
+     */
+    ParallelEvaluator(int parallelism) {
+        this.pool = parallelism > 0 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    int parallelism() {
+        return pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+    }
+
+    /**
+     * @param lookup finds a person by id, typically in a snapshot
+     * @return per pattern, whether {@code ids[i]} satisfies it
+     */
+    boolean[][] evaluate(int[] ids, List<PatternMatches> patterns, IntFunction<Optional<Person>> lookup) {
+        final var matched = new boolean[patterns.size()][ids.length];
+        final var task = new Chunk(ids, patterns, lookup, matched, 0, ids.length);
+
+        if (pool != null) {
+            pool.invoke(task);
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+
+        return matched;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        private final int[] ids;
+        private final List<PatternMatches> patterns;
+        private final IntFunction<Optional<Person>> lookup;
+        private final boolean[][] matched;
+        private final int from;
+        private final int to;
+
+        Chunk(int[] ids, List<PatternMatches> patterns, IntFunction<Optional<Person>> lookup, boolean[][] matched, int from, int to) {
+            this.ids = ids;
+            this.patterns = patterns;
+            this.lookup = lookup;
+            this.matched = matched;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                final var middle = (from + to) >>> 1;
+                invokeAll(
+                        new Chunk(ids, patterns, lookup, matched, from, middle),
+                        new Chunk(ids, patterns, lookup, matched, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                final var person = lookup.apply(ids[i]);
+
+                if (person.isEmpty()) {
+                    continue;
+                }
+
+                // Collected once and shared by every pattern, like a single evaluation
+                final var neighbourhood = new Neighbourhood(person.get(), lookup);
+
+                for (int p = 0; p < matched.length; p++) {
+                    matched[p][i] = patterns.get(p).matches(neighbourhood);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.tech_opdracht;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+
+/**
+ * Register patterns at runtime, next to the default family pattern
+ * Registered patterns live in memory only, like the people they are matched against.
+ */
+@RestController
+@RequestMapping("/api/v1/patterns")
+public class PatternController {
+
+    final PeopleService service;
+    final MatchListCache matchList;
+
+    public PatternController(
+            PeopleService service,
+            MatchListCache matchList
+    ) {
+        this.service = service;
+        this.matchList = matchList;
+    }
+
+    @GetMapping
+    public List<PatternDefinition> patterns() {
+        return service.patterns();
+    }
+
+    /**
+     * Register or replace a pattern, everyone is evaluated against it before this returns
+     */
+    @PutMapping("/{name}")
+    public PatternDefinition registerPattern(@PathVariable String name, @RequestBody PatternDefinition definition) {
+        final var named = definition.withName(name);
+
+        try {
+            service.registerPattern(named);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        return named;
+    }
+
+    @DeleteMapping("/{name}")
+    public ResponseEntity<Void> removePattern(@PathVariable String name) {
+        try {
+            return service.removePattern(name) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * The people currently satisfying a pattern, streamed in id order
+     */
+    @GetMapping("/{name}/matches")
+    public ResponseEntity<StreamingResponseBody> matches(@PathVariable String name, @RequestParam(required = false) Integer cursor) {
+        return service.matchingPeople(name, cursor)
+                .map(people -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .<StreamingResponseBody>body(out -> matchList.write(people, out)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.tech_opdracht;
+
+/**
+ * A family pattern people can be matched against, compiled into a {@link CompiledPattern} when registered
+ *
+ * @param name identifies the pattern
+ * @param partner whether the person needs a partner
+ * @param minChildren at least this many children
+ * @param maxChildren at most this many children, null for no upper bound
+ * @param childrenShareThePartner every child lists the partner as a parent, requires a partner
+ * @param minorAge children younger than this are minors
+ * @param minMinorChildren at least this many children are minors, 0 to ignore ages
+ */
+public record PatternDefinition(
+        String name,
+        PartnerRule partner,
+        int minChildren,
+        Integer maxChildren,
+        boolean childrenShareThePartner,
+        int minorAge,
+        int minMinorChildren
+) {
+    /**
+     * The original pattern: a partner, exactly 3 children with that same partner as parent, at least one under 18
+     */
+    public static final PatternDefinition FAMILY = new PatternDefinition("family", PartnerRule.REQUIRED, 3, 3, true, 18, 1);
+
+    public enum PartnerRule {
+        REQUIRED,
+        ABSENT,
+        ANY
+    }
+
+    public PatternDefinition withName(String name) {
+        return new PatternDefinition(name, partner, minChildren, maxChildren, childrenShareThePartner, minorAge, minMinorChildren);
+    }
+
+    /**
+     * Whether the pattern looks at children's ages, and so has to be re-evaluated as they grow up
+     */
+    public boolean hasAgeRequirement() {
+        return minMinorChildren > 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.tech_opdracht;
+
+import java.time.LocalDate;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The people currently satisfying one registered pattern
+ */
+final class PatternMatches {
+    private volatile CompiledPattern pattern;
+    private volatile long minorCutoffEpochDay;
+    /**
+     * Sorted by id, so large match lists can be paged through with an id cursor
+     */
+    final NavigableSet<Integer> ids = new ConcurrentSkipListSet<>();
+    /**
+     * Size of {@link #ids}, counting a skip list is O(n)
+     */
+    final AtomicInteger count = new AtomicInteger();
+    /**
+     * Bumped after every committed change to the match list: a person joining or leaving it,
+     * or a write touching someone on it
+     */
+    final AtomicLong version = new AtomicLong();
+
+    PatternMatches(CompiledPattern pattern, LocalDate today) {
+        this.pattern = pattern;
+        advanceToday(today);
+    }
+
+    CompiledPattern pattern() {
+        return pattern;
+    }
+
+    /**
+     * Replace the pattern, the matches have to be re-evaluated afterwards
+     */
+    void replace(CompiledPattern pattern, LocalDate today) {
+        this.pattern = pattern;
+        advanceToday(today);
+    }
+
+    long minorCutoffEpochDay() {
+        return minorCutoffEpochDay;
+    }
+
+    void advanceToday(LocalDate today) {
+        minorCutoffEpochDay = today.minusYears(pattern.definition().minorAge()).toEpochDay();
+    }
+
+    boolean matches(Neighbourhood neighbourhood) {
+        final var current = pattern;
+
+        return current.personMatches(neighbourhood) && current.matches(neighbourhood, minorCutoffEpochDay);
+    }
+
+    /**
+     * @return whether the person was not a match yet
+     */
+    boolean add(int id) {
+        if (ids.add(id)) {
+            count.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return whether the person was a match
+     */
+    boolean remove(int id) {
+        if (ids.remove(id)) {
+            count.decrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+}
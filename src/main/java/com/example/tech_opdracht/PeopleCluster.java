@@ -0,0 +1,138 @@
+package com.example.tech_opdracht;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The instances of a partitioned deployment, every person is owned by exactly one of them
+ * Only the owner stores a person, the others read and change it through the owner.
+ */
+public interface PeopleCluster {
+    /**
+     * A single instance owning everyone
+     */
+    PeopleCluster SINGLE = new PeopleCluster() {
+        @Override
+        public boolean owns(int id) {
+            return true;
+        }
+
+        @Override
+        public void forward(PersonMutation mutation) {
+            throw new IllegalStateException("a single instance owns every person");
+        }
+
+        @Override
+        public Optional<Person> get(int id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void changeRelationships(Collection<RelationshipChange> changes) {
+            if (!changes.isEmpty()) {
+                throw new IllegalStateException("a single instance owns every person");
+            }
+        }
+
+        @Override
+        public void reevaluate(Collection<Integer> ids) {
+        }
+
+        @Override
+        public List<MatchSummary> remoteMatchSummaries() {
+            return List.of();
+        }
+
+        @Override
+        public List<Stream<Person>> remoteMatches(Integer cursor) {
+            return List.of();
+        }
+    };
+
+    boolean owns(int id);
+
+    /**
+     * Apply a mutation of someone owned elsewhere on its owner, including its evaluation
+     */
+    void forward(PersonMutation mutation);
+
+    /**
+     * Read someone owned elsewhere
+     */
+    Optional<Person> get(int id);
+
+    /**
+     * Apply relationship changes to people owned elsewhere, waits until every owner applied them
+     */
+    void changeRelationships(Collection<RelationshipChange> changes);
+
+    /**
+     * Have the owners of these ids re-evaluate them
+     */
+    void reevaluate(Collection<Integer> ids);
+
+    List<MatchSummary> remoteMatchSummaries();
+
+    /**
+     * The matches of every other instance, each in id order, starting after the cursor
+     * The streams hold open connections and have to be closed.
+     */
+    List<Stream<Person>> remoteMatches(Integer cursor);
+
+    /**
+     * Merge streams that are each sorted by id into one sorted stream, closing them all when it is closed
+     */
+    static Stream<Person> mergeById(List<Stream<Person>> sorted) {
+        final var iterators = sorted.stream().map(Stream::iterator).toList();
+        final var merged = new Iterator<Person>() {
+            private final Person[] heads = new Person[iterators.size()];
+
+            {
+                for (int i = 0; i < heads.length; i++) {
+                    heads[i] = iterators.get(i).hasNext() ? iterators.get(i).next() : null;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                for (final var head : heads) {
+                    if (head != null) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            @Override
+            public Person next() {
+                int lowest = -1;
+
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] != null && (lowest < 0 || heads[i].getId() < heads[lowest].getId())) {
+                        lowest = i;
+                    }
+                }
+
+                if (lowest < 0) {
+                    throw new NoSuchElementException();
+                }
+
+                final var result = heads[lowest];
+                heads[lowest] = iterators.get(lowest).hasNext() ? iterators.get(lowest).next() : null;
+
+                return result;
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> sorted.forEach(Stream::close));
+    }
+}
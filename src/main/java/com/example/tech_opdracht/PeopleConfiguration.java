@@ -0,0 +1,99 @@
+package com.example.tech_opdracht;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+
+@Configuration
+public class PeopleConfiguration {
+
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "people.persistence.enabled", havingValue = "true")
+    public WriteAheadLog writeAheadLog(
+            @Value("${people.persistence.directory:data}") Path directory,
+            @Value("${people.persistence.segment-size:67108864}") int segmentSize,
+            @Value("${people.persistence.sync-every-write:false}") boolean syncEveryWrite
+    ) {
+        return new WriteAheadLog(directory, segmentSize, syncEveryWrite);
+    }
+
+    @Bean
+    public MutationExecutor mutationExecutor(
+            @Value("${people.concurrency.mode:global}") ConcurrencyMode mode,
+            @Value("${people.sharding.shards:0}") int shards,
+            @Value("${people.single-writer.queue-capacity:4096}") int queueCapacity,
+            @Value("${people.single-writer.max-batch:256}") int maxBatch,
+            PeopleRepository repository,
+            PersonLocks locks,
+            ObjectProvider<WriteAheadLog> writeAheadLog
+    ) {
+        return switch (mode) {
+            case SHARDED -> new ShardedMutationExecutor(shards > 0 ? shards : Runtime.getRuntime().availableProcessors(), repository, locks);
+            case SINGLE_WRITER -> {
+                final var wal = writeAheadLog.getIfAvailable();
+
+                // Callers are only answered after the sync, so a batch is durable when they return
+                yield new SingleWriterMutationExecutor(queueCapacity, maxBatch, wal == null ? () -> {} : wal::sync);
+            }
+            default -> MutationExecutor.DIRECT;
+        };
+    }
+
+    /**
+     * Runs full evaluations, 0 shares the common fork-join pool
+     */
+    @Bean
+    ParallelEvaluator parallelEvaluator(@Value("${people.evaluation.parallelism:0}") int parallelism) {
+        return new ParallelEvaluator(parallelism);
+    }
+
+    @Bean
+    public PeopleCluster peopleCluster(
+            @Value("${people.cluster.nodes:}") List<String> nodes,
+            @Value("${people.cluster.self:0}") int self,
+            ObjectMapper objectMapper
+    ) {
+        if (nodes.isEmpty()) {
+            return PeopleCluster.SINGLE;
+        }
+
+        return new HttpPeopleCluster(nodes, self, objectMapper);
+    }
+
+    /**
+     * Request bodies are decoded straight into {@link Person}, Spring Boot registers the module with its ObjectMapper
+     */
+    @Bean
+    public Module peopleJsonModule() {
+        return new SimpleModule("people").addDeserializer(Person.class, new PersonJsonDeserializer());
+    }
+
+    /**
+     * Picked up by Spring Boot next to the JSON converter
+     */
+    @Bean
+    public PeopleWireFormatConverter peopleWireFormatConverter() {
+        return new PeopleWireFormatConverter();
+    }
+
+    @Bean
+    public MutationLog mutationLog(ObjectProvider<WriteAheadLog> writeAheadLog) {
+        final var wal = writeAheadLog.getIfAvailable();
+
+        return wal == null ? MutationLog.NONE : wal::append;
+    }
+}
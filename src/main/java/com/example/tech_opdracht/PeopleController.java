@@ -1,48 +1,209 @@
 package com.example.tech_opdracht;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/v1/people")
 public class PeopleController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int MAX_PAGE_SIZE = 10_000;
+    /**
+     * Batch records applied and evaluated together, so a batch of any size holds only this many at once
+     */
+    static final int BATCH_CHUNK_SIZE = 1_000;
+
     final PeopleService service;
+    final ObjectMapper objectMapper;
+    final PeopleMetrics metrics;
+    final MatchListCache matchList;
+    final MatchEventFeed matchEvents;
 
     public PeopleController(
-            PeopleService  peopleService
+            PeopleService  peopleService,
+            ObjectMapper objectMapper,
+            PeopleMetrics metrics,
+            MatchListCache matchList,
+            MatchEventFeed matchEvents
     ) {
         service = peopleService;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.matchList = matchList;
+        this.matchEvents = matchEvents;
     }
 
+    /**
+     * Responds with the match list and its ETag
+     * Requests and responses are JSON unless {@value PeopleWireFormat#MEDIA_TYPE_VALUE} is sent as Content-Type or Accept.
+     * A client sending the current ETag in If-None-Match gets a 304 without a body.
+     * The list is streamed in id order, with {@code limit} only that many matches after {@code cursor} are sent
+     * and the cursor of the next page is returned in {@value #NEXT_CURSOR_HEADER}. Pages carry no ETag,
+     * it stands for the whole list.
+     */
     @PostMapping
-    public ResponseEntity<List<PersonDTO>> addOrUpdatePerson(@RequestBody PersonDTO dto) {
-        final var person = dto.toPerson();
-
+    public ResponseEntity<StreamingResponseBody> addOrUpdatePerson(
+            @RequestBody Person person,
+            @RequestParam(required = false) Integer cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws IOException {
         service.addOrUpdatePerson(person);
 
-        final var adheresToCriteria = service.getMatchingPeople();
-
-        if (!adheresToCriteria.isEmpty()) {
-            final var body = adheresToCriteria.stream().map(PersonDTO::from).toList();
+        final var format = MatchListCache.Format.negotiate(accept);
+        final var matches = matchList.current(format);
 
-            return ResponseEntity.status(200).body(body); // HTTP 444 No Response
-        } else {
+        if (matches.empty()) {
             return ResponseEntity.status(444).build(); // HTTP 444 No Response
         }
+
+        final var response = ResponseEntity.status(200).contentType(format.mediaType());
+
+        if (limit == null) {
+            if (matches.matches(ifNoneMatch)) {
+                return ResponseEntity.status(304).eTag(matches.etag()).build();
+            }
+
+            return response.eTag(matches.etag()).body(out -> {
+                final var started = System.nanoTime();
+                matchList.write(matches, out);
+                metrics.response(System.nanoTime() - started);
+            });
+        }
+
+        final var page = page(cursor, limit, response);
+
+        return response.body(out -> {
+            final var started = System.nanoTime();
+            matchList.write(page.stream(), format, out);
+            metrics.response(System.nanoTime() - started);
+        });
+    }
+
+    /**
+     * Up to {@code limit} matches after {@code cursor}, the cursor of the next page goes in {@value #NEXT_CURSOR_HEADER}
+     */
+    private List<Person> page(Integer cursor, int limit, ResponseEntity.HeadersBuilder<?> response) {
+        // One extra to know whether there is a next page, memory stays bounded by the page size
+        final var pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        final List<Person> page;
+        try (final var people = service.matchingPeople(cursor)) {
+            page = people.limit(pageSize + 1).toList();
+        }
+
+        if (page.size() > pageSize) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.get(pageSize - 1).getId()));
+            return page.subList(0, pageSize);
+        }
+
+        return page;
+    }
+
+    /**
+     * Server-sent "entered" and "left" events for people starting or stopping to match
+     * Reconnect with the id of the last event received, as Last-Event-ID or {@code resumeToken}, to resume without gaps.
+     */
+    @GetMapping(path = "/matches/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter matchEvents(
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(required = false) String resumeToken
+    ) {
+        return matchEvents.subscribe(resumeToken != null ? resumeToken : lastEventId);
+    }
+
+    /**
+     * Bulk ingest of a JSON array or newline delimited JSON
+     * Records are applied while the body is read, every {@value #BATCH_CHUNK_SIZE} records are evaluated once together.
+     * A bad record is reported in the response instead of failing the batch.
+     * The response holds the number of matches and their first {@code limit}, further pages are read with the
+     * cursor in {@value #NEXT_CURSOR_HEADER}.
+     */
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchResultDTO> addOrUpdatePeople(
+            InputStream body,
+            @RequestParam(defaultValue = "100") int limit
+    ) throws IOException {
+        final var chunk = new ArrayList<Person>(BATCH_CHUNK_SIZE);
+        final var errors = new ArrayList<BatchErrorDTO>();
+        var applied = 0;
+
+        try (final var records = objectMapper.readerFor(Person.class).<Person>readValues(body)) {
+            for (int index = 0; ; index++) {
+                try {
+                    if (!records.hasNextValue()) {
+                        break;
+                    }
+
+                    chunk.add(records.nextValue());
+
+                    if (chunk.size() == BATCH_CHUNK_SIZE) {
+                        service.addOrUpdatePeople(chunk);
+                        applied += chunk.size();
+                        chunk.clear();
+                    }
+                } catch (JsonMappingException e) {
+                    // The iterator skips the rest of a record it could not map
+                    errors.add(new BatchErrorDTO(index, e.getOriginalMessage()));
+                } catch (JsonProcessingException e) {
+                    // Malformed JSON, there is no way to find the start of the next record
+                    errors.add(new BatchErrorDTO(index, e.getOriginalMessage()));
+                    break;
+                }
+            }
+        }
+
+        service.addOrUpdatePeople(chunk);
+        applied += chunk.size();
+
+        final var started = System.nanoTime();
+        final var matched = service.matchCount();
+        final var response = ResponseEntity.status(matched == 0 ? 444 : 200);
+        final var matches = page(null, limit, response).stream().map(PersonDTO::from).toList();
+        metrics.response(System.nanoTime() - started);
+
+        return response.body(new BatchResultDTO(applied, matched, matches, errors));
     }
 
 }
 
+record BatchResultDTO(
+        int applied,
+        int matched,
+        List<PersonDTO> matches,
+        List<BatchErrorDTO> errors
+) {}
+
+/**
+ * @param index position of the record in the batch, a record that could not be read has no reliable id
+ */
+record BatchErrorDTO(
+        int index,
+        String message
+) {}
+
 record PersonDTO(
         Integer id,
         String name,
@@ -52,18 +213,30 @@ record PersonDTO(
         @JsonProperty(required = false) PersonReferenceDTO partner,
         List<PersonReferenceDTO> children
 ) {
+    /**
+     * Requests are decoded by {@link PersonJsonDeserializer} without this detour, missing relatives are left out the same way
+     */
     public Person toPerson() {
         final var result =  new Person(id);
         result.setName(name);
         result.setBirthDate(birthDate);
-        result.setParentIds(Set.of(parent1.id(), parent2.id()));
 
-        final var childrenSet = children
-                .stream()
-                .map(PersonReferenceDTO::id)
-                .collect(Collectors.toSet());
+        final var parentIds = new int[2];
+        var parentCount = 0;
+        for (final var parent : new PersonReferenceDTO[] {parent1, parent2}) {
+            if (parent != null) {
+                parentIds[parentCount++] = parent.id();
+            }
+        }
+        result.setParentIds(IdSet.of(parentIds, parentCount));
 
-        result.setChildrenIds(childrenSet);
+        if (children != null) {
+            final var childIds = new int[children.size()];
+            for (int i = 0; i < childIds.length; i++) {
+                childIds[i] = children.get(i).id();
+            }
+            result.setChildrenIds(IdSet.of(childIds, childIds.length));
+        }
 
         if (partner != null) {
             result.setPartnerId(partner.id());
@@ -73,15 +246,16 @@ record PersonDTO(
     }
 
     public static PersonDTO from(Person person) {
-        final var parents = person.getParentIds().stream().toList();
-        final var partner = person.getPartnerId().isEmpty() ? new PersonReferenceDTO(person.getPartnerId().get()) : null;
+        // Relatives that were auto-created before their own record arrived have no parents yet
+        final var parents = person.getParentIds();
+        final var partner = person.getPartnerId().map(PersonReferenceDTO::new).orElse(null);
 
         return new PersonDTO(
                 person.getId(),
                 person.getName(),
                 person.getBirthDate(),
-                new PersonReferenceDTO(parents.get(0)),
-                new PersonReferenceDTO(parents.get(1)),
+                parents.size() > 0 ? new PersonReferenceDTO(parents.get(0)) : null,
+                parents.size() > 1 ? new PersonReferenceDTO(parents.get(1)) : null,
                 partner,
                 person.getChildrenIds().stream().map(PersonReferenceDTO::new).toList()
         );
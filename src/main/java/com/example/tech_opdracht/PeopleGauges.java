@@ -0,0 +1,53 @@
+package com.example.tech_opdracht;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizes of the in-memory state, sampled when metrics are scraped
+ */
+@Component
+public class PeopleGauges implements MeterBinder {
+    private final PeopleService service;
+    private final PeopleRepository repository;
+    private final MatchEventFeed matchEvents;
+
+    public PeopleGauges(
+            PeopleService service,
+            PeopleRepository repository,
+            MatchEventFeed matchEvents
+    ) {
+        this.service = service;
+        this.repository = repository;
+        this.matchEvents = matchEvents;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("people.repository.size", repository, PeopleRepository::size)
+                .description("People held in memory, auto-created relatives included")
+                .register(registry);
+        Gauge.builder("people.tombstones", repository, PeopleRepository::tombstoneCount)
+                .description("Deletes waiting for compaction")
+                .register(registry);
+        Gauge.builder("people.reclaimed.bytes", repository, PeopleRepository::reclaimedBytes)
+                .description("Estimated heap reclaimed by deletes and compaction")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("people.placeholders.live", repository, PeopleRepository::placeholderCount)
+                .description("Auto-created relatives still waiting for a real record")
+                .register(registry);
+        Gauge.builder("people.placeholders.bytes", repository, PeopleRepository::placeholderBytes)
+                .description("Estimated heap held by auto-created relatives")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("people.matches", service, people -> people.localMatchSummary().count())
+                .description("People owned by this instance currently satisfying the pattern")
+                .register(registry);
+        Gauge.builder("people.events.subscribers", matchEvents, MatchEventFeed::subscriberCount)
+                .description("Open match event streams")
+                .register(registry);
+    }
+}
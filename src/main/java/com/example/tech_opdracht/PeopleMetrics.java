@@ -0,0 +1,79 @@
+package com.example.tech_opdracht;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters on the hot paths, exposed through Actuator
+ * Total request latency is in Spring's own http.server.requests, these split it up.
+ */
+@Component
+public class PeopleMetrics {
+    private final Timer mutation;
+    private final Timer evaluation;
+    private final Timer response;
+    private final Timer lockWait;
+    private final Counter placeholdersCreated;
+    private final Counter unchangedSkipped;
+
+    public PeopleMetrics(MeterRegistry registry) {
+        this.mutation = Timer.builder("people.mutation")
+                .description("Time spent applying a mutation to the graph, lock wait included")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.evaluation = Timer.builder("people.evaluation")
+                .description("Time spent re-evaluating the pattern for the affected people")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.response = Timer.builder("people.response")
+                .description("Time spent collecting and converting the matches for a response")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.lockWait = Timer.builder("people.lock.wait")
+                .description("Time spent waiting for the person locks of a mutation")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.placeholdersCreated = Counter.builder("people.placeholders")
+                .description("People auto-created because a relationship referred to them")
+                .register(registry);
+        this.unchangedSkipped = Counter.builder("people.unchanged")
+                .description("Writes skipped because the stored record already had the same content")
+                .register(registry);
+    }
+
+    /**
+     * Records into a registry without backends, for use outside of Spring
+     */
+    public static PeopleMetrics none() {
+        return new PeopleMetrics(new CompositeMeterRegistry());
+    }
+
+    public void mutation(long nanos) {
+        mutation.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void evaluation(long nanos) {
+        evaluation.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void response(long nanos) {
+        response.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void lockWait(long nanos) {
+        lockWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void placeholderCreated() {
+        placeholdersCreated.increment();
+    }
+
+    public void unchangedSkipped() {
+        unchangedSkipped.increment();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.tech_opdracht;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional durability for the in-memory graph
+ * On startup the latest snapshot is loaded and only the write-ahead log after it is replayed.
+ * While running, the log is group synced and a new snapshot is taken periodically.
+ */
+@Component
+@ConditionalOnProperty(name = "people.persistence.enabled", havingValue = "true")
+public class PeoplePersistence {
+    private static final Logger log = LoggerFactory.getLogger(PeoplePersistence.class);
+
+    private final WriteAheadLog writeAheadLog;
+    private final SnapshotStore snapshots;
+    private final PeopleService service;
+    private final PeopleRepository repository;
+    private final PersonLocks locks;
+    private final long syncIntervalMillis;
+    /**
+     * The group sync has its own thread, so snapshots and other scheduled jobs never delay it
+     */
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("people-wal-sync").daemon().factory());
+
+    public PeoplePersistence(
+            WriteAheadLog writeAheadLog,
+            @Value("${people.persistence.directory:data}") Path directory,
+            PeopleService service,
+            PeopleRepository repository,
+            PersonLocks locks,
+            @Value("${people.persistence.fsync-interval-ms:10}") long syncIntervalMillis
+    ) {
+        this.writeAheadLog = writeAheadLog;
+        this.snapshots = new SnapshotStore(directory);
+        this.service = service;
+        this.repository = repository;
+        this.locks = locks;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        final var started = System.nanoTime();
+        final long fromSegment;
+
+        try (final var write = repository.beginWrite()) {
+            fromSegment = snapshots.load(write::put);
+        }
+
+        writeAheadLog.replay(fromSegment, service::replay);
+        writeAheadLog.start();
+        service.rebuild();
+        syncer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+
+        log.info("Recovered {} people in {} ms", repository.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public void sync() {
+        try {
+            writeAheadLog.sync();
+        } catch (RuntimeException e) {
+            // A scheduled task that throws is never run again
+            log.error("Failed to sync the write-ahead log", e);
+        }
+    }
+
+    /**
+     * Writers are only blocked while the log is rolled and a repository snapshot is opened,
+     * the snapshot is written from that consistent view while writes continue
+     */
+    @Scheduled(
+            initialDelayString = "${people.persistence.snapshot-interval-ms:600000}",
+            fixedDelayString = "${people.persistence.snapshot-interval-ms:600000}"
+    )
+    public void snapshot() throws IOException {
+        final long walSegment;
+        final PeopleRepository.Snapshot snapshot;
+
+        try (final var _ = locks.lockAll()) {
+            walSegment = writeAheadLog.roll();
+            snapshot = repository.snapshot();
+        }
+
+        try (snapshot) {
+            final var people = snapshot.people();
+
+            // Returns once the snapshot is synced, only then is the log it covers no longer needed
+            snapshots.write(walSegment, people);
+            writeAheadLog.deleteSegmentsBefore(walSegment);
+
+            log.info("Snapshot of {} people written, log continues at segment {}", people.size(), walSegment);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        syncer.shutdown();
+
+        try {
+            syncer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writeAheadLog.close();
+    }
+}
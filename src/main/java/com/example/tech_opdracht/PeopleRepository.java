@@ -2,34 +2,383 @@ package com.example.tech_opdracht;
 
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Multi-version store of people
+ * Every write gets a version and installs copies of the people it changes, chained to the
+ * previous version. Writes commit strictly in version order, so readers never lock: they read
+ * the newest version at or below the committed version, and a {@link Snapshot} keeps seeing the
+ * graph as it was when it was taken. Old versions are dropped as soon as no snapshot needs them.
+ */
 @Service
 public class PeopleRepository {
+    /**
+     * Rough per-entry cost of the map itself: node, boxed key and table slot
+     */
+    private static final long ENTRY_OVERHEAD_BYTES = 48;
+    /**
+     * Shape of people without partner and children, and of deleted people, these are not indexed
+     */
+    private static final int UNINDEXED = 0;
+
     private final Map<Integer, Person> people = new ConcurrentHashMap<>();
-    private final Map<Integer, Integer> deletedPeople = new ConcurrentHashMap<>();
+    private final Queue<Tombstone> tombstones = new ConcurrentLinkedQueue<>();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong reclaimedPeople = new AtomicLong();
+    private final AtomicLong placeholders = new AtomicLong();
+    private final AtomicLong placeholderBytes = new AtomicLong();
+
+    private final AtomicLong lastVersion = new AtomicLong();
+    private volatile long committedVersion;
+    /**
+     * Versions of the open snapshots with their reference counts
+     */
+    private final ConcurrentSkipListMap<Long, Integer> snapshots = new ConcurrentSkipListMap<>();
+    /**
+     * Ids by shape, child count and partner presence, of the newest versions
+     * People with neither are left out: most of them are auto-created placeholders, and only
+     * patterns accepting people without partner and children would need them.
+     */
+    private final Map<Integer, Set<Integer>> byShape = new ConcurrentHashMap<>();
+
+    public Optional<Person> get(Integer id) {
+        while (true) {
+            final var version = committedVersion;
+            final var head = people.get(id);
+
+            if (head == null) {
+                return Optional.empty();
+            }
+
+            final var visible = head.visibleAt(version);
+
+            // Without a visible version either the person is newer than us, or a write pruned the version
+            // we were after while committing a newer one. Only in the latter case did the version move on.
+            if (visible != null || committedVersion == version) {
+                return Optional.ofNullable(visible).filter(Person::isAlive);
+            }
+        }
+    }
+
+    /**
+     * All people at the committed version
+     */
+    public List<Person> people() {
+        try (final var snapshot = snapshot()) {
+            return snapshot.people();
+        }
+    }
+
+    /**
+     * A consistent, immutable view of the graph at the current committed version
+     * Must be closed, an open snapshot keeps the versions it needs alive.
+     */
+    public Snapshot snapshot() {
+        // Pin everything first, so no version can be pruned between reading and registering
+        retain(Long.MIN_VALUE);
+
+        final var version = committedVersion;
+        retain(version);
+        release(Long.MIN_VALUE);
+
+        return new Snapshot(version);
+    }
+
+    /**
+     * Ids of the people with a child count in the range and the given partner presence
+     * Reflects the newest writes, only exact while holding all locks.
+     *
+     * @param partner whether they have a partner, null for either
+     * @return empty when the range includes people without partner and children, they are not indexed
+     */
+    public Optional<Set<Integer>> candidates(Boolean partner, int minChildren, int maxChildren) {
+        if (minChildren == 0 && !Boolean.TRUE.equals(partner)) {
+            return Optional.empty();
+        }
+
+        final var ids = new HashSet<Integer>();
+
+        byShape.forEach((shape, members) -> {
+            final var childCount = shape >>> 1;
+            final var hasPartner = (shape & 1) == 1;
+
+            if (childCount >= minChildren && childCount <= maxChildren && (partner == null || partner == hasPartner)) {
+                ids.addAll(members);
+            }
+        });
+
+        return Optional.of(ids);
+    }
+
+    /**
+     * Start a write, only call this while holding the locks of every id it will touch
+     * Closing the write commits it, after every earlier write has committed.
+     */
+    public Write beginWrite() {
+        return new Write(lastVersion.incrementAndGet());
+    }
+
+    /**
+     * Remove the oldest tombstone from the map, once no reader can still see the deleted person
+     */
+    public Optional<Tombstone> pollTombstone() {
+        final var tombstone = tombstones.peek();
+
+        if (tombstone == null || tombstone.marker().version() > Math.min(committedVersion, oldestSnapshot())) {
+            return Optional.empty();
+        }
+
+        tombstones.remove(tombstone);
+        people.remove(tombstone.id(), tombstone.marker());
+
+        return Optional.of(tombstone);
+    }
+
+    /**
+     * Entries in the map, tombstones that are not purged yet included
+     */
+    public int size() {
+        return people.size();
+    }
+
+    public int tombstoneCount() {
+        return tombstones.size();
+    }
+
+    public long reclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    public long reclaimedPeople() {
+        return reclaimedPeople.get();
+    }
+
+    /**
+     * Auto-created relatives that have not received a real record yet
+     */
+    public long placeholderCount() {
+        return placeholders.get();
+    }
+
+    /**
+     * Estimated heap held by placeholders, map entries included, shared id sets counted for each of them
+     */
+    public long placeholderBytes() {
+        return placeholderBytes.get();
+    }
+
+    private long oldestSnapshot() {
+        final var oldest = snapshots.firstEntry();
+
+        return oldest == null ? Long.MAX_VALUE : oldest.getKey();
+    }
+
+    private void retain(long version) {
+        snapshots.merge(version, 1, Integer::sum);
+    }
+
+    private void release(long version) {
+        snapshots.computeIfPresent(version, (_, count) -> count == 1 ? null : count - 1);
+    }
+
+    private static int shapeOf(Person person) {
+        if (person == null || !person.isAlive()) {
+            return UNINDEXED;
+        }
 
-    public synchronized Optional<Person> get(Integer id) {
-        if (deletedPeople.containsKey(id)) {
-           return Optional.empty();
+        return person.getChildrenIds().size() << 1 | (person.hasPartner() ? 1 : 0);
+    }
+
+    private void account(Person before, Person after) {
+        if (before != null && before.isPlaceholder()) {
+            placeholders.decrementAndGet();
+            placeholderBytes.addAndGet(-before.estimatedSize() - ENTRY_OVERHEAD_BYTES);
         }
 
-        return Optional.ofNullable(people.get(id));
+        if (after != null && after.isPlaceholder()) {
+            placeholders.incrementAndGet();
+            placeholderBytes.addAndGet(after.estimatedSize() + ENTRY_OVERHEAD_BYTES);
+        }
     }
 
-    public synchronized void put(Person person) {
-        deletedPeople.remove(person.getId());
+    private void reindex(int id, int before, int after) {
+        if (before == after) {
+            return;
+        }
+
+        if (before != UNINDEXED) {
+            byShape.computeIfPresent(before, (_, members) -> {
+                members.remove(id);
+                return members.isEmpty() ? null : members;
+            });
+        }
+
+        if (after != UNINDEXED) {
+            byShape.computeIfAbsent(after, _ -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    /**
+     * Make {@code person} the newest version of its id
+     */
+    private void install(Person person, long version) {
+        final var head = people.get(person.getId());
+
+        if (head != null && head.version() <= oldestSnapshot()) {
+            // No snapshot is older than the current head, so nothing older than it is needed anymore
+            head.dropPrevious();
+        }
+
+        person.installAt(version, head);
         people.put(person.getId(), person);
     }
 
-    public synchronized List<Person> people() {
-        return people.values().stream().filter(x -> !deletedPeople.containsKey(x.getId())).toList();
+    public final class Write implements AutoCloseable {
+        private final long version;
+        private final List<Tombstone> deleted = new ArrayList<>();
+        /**
+         * The people this write touches as they were before it touched them, null for new ids
+         */
+        private final Map<Integer, Person> before = new HashMap<>();
+
+        private Write(long version) {
+            this.version = version;
+        }
+
+        /**
+         * The newest version of a person, this write's own changes included
+         */
+        public Optional<Person> get(int id) {
+            return Optional.ofNullable(people.get(id)).filter(Person::isAlive);
+        }
+
+        /**
+         * A copy of the person that belongs to this write and can be changed in place
+         */
+        public Optional<Person> edit(int id) {
+            final var head = people.get(id);
+
+            if (head == null || !head.isAlive()) {
+                return Optional.empty();
+            }
+
+            if (head.version() == version) {
+                return Optional.of(head);
+            }
+
+            final var copy = head.copy();
+            install(copy);
+
+            return Optional.of(copy);
+        }
+
+        /**
+         * Store a copy of the given person, the caller keeps ownership of its own object
+         */
+        public void put(Person person) {
+            install(person.copy());
+        }
+
+        /**
+         * Removes the person and leaves a tombstone with the ids it referred to, so compaction can
+         * later reclaim relatives that only existed because of it
+         */
+        public void delete(int id) {
+            final var removed = get(id);
+
+            if (removed.isPresent()) {
+                final var marker = Person.tombstone(id);
+                install(marker);
+                deleted.add(new Tombstone(id, removed.get().relatedIds(), marker));
+
+                reclaimedBytes.addAndGet(removed.get().estimatedSize() + ENTRY_OVERHEAD_BYTES);
+                reclaimedPeople.incrementAndGet();
+            }
+        }
+
+        private void install(Person person) {
+            if (!before.containsKey(person.getId())) {
+                before.put(person.getId(), people.get(person.getId()));
+            }
+
+            PeopleRepository.this.install(person, version);
+        }
+
+        @Override
+        public void close() {
+            // Working copies may have changed after they were installed, so they are indexed and accounted now
+            before.forEach((id, previous) -> {
+                final var current = people.get(id);
+                reindex(id, shapeOf(previous), shapeOf(current));
+                account(previous, current);
+            });
+
+            // Commit in version order, the writes before us are already past their locks and never block
+            for (int spins = 0; committedVersion != version - 1; spins++) {
+                if (spins < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+
+            committedVersion = version;
+            tombstones.addAll(deleted);
+        }
     }
 
-    public synchronized void delete(Integer id) {
-        deletedPeople.put(id, id);
+    public final class Snapshot implements AutoCloseable {
+        private final long version;
+
+        private Snapshot(long version) {
+            this.version = version;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public Optional<Person> get(int id) {
+            final var head = people.get(id);
+
+            return Optional.ofNullable(head == null ? null : head.visibleAt(version)).filter(Person::isAlive);
+        }
+
+        public List<Person> people() {
+            final var result = new ArrayList<Person>(PeopleRepository.this.people.size());
+
+            for (final var head : PeopleRepository.this.people.values()) {
+                final var visible = head.visibleAt(version);
+
+                if (visible != null && visible.isAlive()) {
+                    result.add(visible);
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public void close() {
+            release(version);
+        }
     }
+
+    public record Tombstone(
+            int id,
+            int[] relatedIds,
+            Person marker
+    ) {}
 }
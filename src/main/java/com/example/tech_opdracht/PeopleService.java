@@ -1,174 +1,1065 @@
 package com.example.tech_opdracht;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
 
 @Service
 public class PeopleService {
+    public static final String DEFAULT_PATTERN = PatternDefinition.FAMILY.name();
+
     private final PeopleRepository repository;
+    private final PersonLocks locks;
+    private final MutationLog log;
+    private final PeopleMetrics metrics;
+    private final MutationExecutor executor;
+    private final PeopleCluster cluster;
+    private final ParallelEvaluator evaluator;
+    /**
+     * Whether relatives can be owned by other instances, and have to be read before taking locks
+     */
+    private final boolean partitioned;
+    /**
+     * Stamps of changes other instances report, and per id slot the stamp of the last one
+     * Reads of remote relatives from before the last change of an id are stale for evaluating it.
+     */
+    private final AtomicLong remoteChanges = new AtomicLong();
+    private final AtomicLongArray remoteChangedAt = new AtomicLongArray(1024);
+    /**
+     * One instance, so a batching executor sees every mutation of a batch ask for the same evaluation
+     */
+    private final Consumer<Set<Integer>> batchEvaluation = this::evaluateBatch;
+    /**
+     * Tells match versions of different processes apart
+     */
+    private final String instance = Long.toHexString(UUID.randomUUID().getMostSignificantBits());
+    /**
+     * The pattern served by the people endpoints, it can be replaced but not removed
+     */
+    private final PatternMatches family;
+    /**
+     * Every registered pattern, the default one first. Replaced as a whole while all locks are held.
+     */
+    private volatile List<PatternMatches> patterns;
+    private final List<MatchListener> matchListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Minors keyed on the epoch day they reach the minor age of a pattern, so a change of day
+     * only revisits their families
+     */
+    private final ConcurrentSkipListMap<Long, Set<Integer>> comingOfAge = new ConcurrentSkipListMap<>();
+    private volatile LocalDate today;
 
     public PeopleService(
             PeopleRepository repository
+    ) {
+        this(repository, PersonLocks.global(), Clock.systemDefaultZone(), MutationLog.NONE, PeopleMetrics.none());
+    }
+
+    public PeopleService(
+            PeopleRepository repository,
+            PersonLocks locks,
+            Clock clock,
+            MutationLog log,
+            PeopleMetrics metrics
+    ) {
+        this(repository, locks, clock, log, metrics, MutationExecutor.DIRECT);
+    }
+
+    public PeopleService(
+            PeopleRepository repository,
+            PersonLocks locks,
+            Clock clock,
+            MutationLog log,
+            PeopleMetrics metrics,
+            MutationExecutor executor
+    ) {
+        this(repository, locks, clock, log, metrics, executor, PeopleCluster.SINGLE);
+    }
+
+    public PeopleService(
+            PeopleRepository repository,
+            PersonLocks locks,
+            Clock clock,
+            MutationLog log,
+            PeopleMetrics metrics,
+            MutationExecutor executor,
+            PeopleCluster cluster
+    ) {
+        this(repository, locks, clock, log, metrics, executor, cluster, new ParallelEvaluator(0));
+    }
+
+    @Autowired
+    public PeopleService(
+            PeopleRepository repository,
+            PersonLocks locks,
+            Clock clock,
+            MutationLog log,
+            PeopleMetrics metrics,
+            MutationExecutor executor,
+            PeopleCluster cluster,
+            ParallelEvaluator evaluator
     ) {
         this.repository = repository;
+        this.locks = locks;
+        this.log = log;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.cluster = cluster;
+        this.evaluator = evaluator;
+        this.partitioned = cluster != PeopleCluster.SINGLE;
+        this.today = LocalDate.now(clock);
+        this.family = new PatternMatches(CompiledPattern.compile(PatternDefinition.FAMILY), today);
+        this.patterns = List.of(family);
     }
 
+    /**
+     * Returns the people currently satisfying the pattern
+     * Served from the match index, so this is O(matches) rather than a scan of the repository
+     */
     public Collection<Person> getMatchingPeople() {
-        final var result = new HashSet<Person>();
+        try (final var people = matchingPeople(null)) {
+            return people.toList();
+        }
+    }
+
+    /**
+     * The people currently satisfying the pattern in id order, starting after the cursor,
+     * on every instance of the cluster
+     * Resolved lazily while the stream is consumed, nothing is collected up front. Close it when done.
+     *
+     * @param cursor the last id already seen, or null to start at the beginning
+     */
+    public Stream<Person> matchingPeople(Integer cursor) {
+        final var remote = cluster.remoteMatches(cursor);
+
+        if (remote.isEmpty()) {
+            return localMatchingPeople(cursor);
+        }
 
-        for (final var person : repository.people()) {
-            if (satisfiesPattern(person)) {
-                result.add(person);
+        final var sorted = new ArrayList<Stream<Person>>(remote);
+        sorted.add(localMatchingPeople(cursor));
+
+        return PeopleCluster.mergeById(sorted);
+    }
+
+    /**
+     * Like {@link #matchingPeople(Integer)}, for the people owned by this instance only
+     */
+    public Stream<Person> localMatchingPeople(Integer cursor) {
+        return matchingPeople(family, cursor);
+    }
+
+    /**
+     * The people currently satisfying a registered pattern, like {@link #matchingPeople(Integer)}
+     */
+    public Optional<Stream<Person>> matchingPeople(String pattern, Integer cursor) {
+        return find(pattern).map(matches -> matchingPeople(matches, cursor));
+    }
+
+    private Stream<Person> matchingPeople(PatternMatches matches, Integer cursor) {
+        final var ids = cursor == null ? matches.ids : matches.ids.tailSet(cursor, false);
+
+        return ids.stream()
+                .map(repository::get)
+                .flatMap(Optional::stream);
+    }
+
+    public int matchCount() {
+        return matchSummary().count();
+    }
+
+    /**
+     * Version and size of the match list of the whole cluster
+     * Read it before {@link #matchingPeople(Integer)}, the list is then at least as new as the version.
+     */
+    public MatchSummary matchSummary() {
+        final var local = localMatchSummary();
+        final var remote = cluster.remoteMatchSummaries();
+
+        if (remote.isEmpty()) {
+            return local;
+        }
+
+        final var instances = new StringBuilder(local.instance());
+        var version = local.version();
+        var count = local.count();
+
+        for (final var summary : remote) {
+            instances.append(summary.instance());
+            version += summary.version();
+            count += summary.count();
+        }
+
+        return new MatchSummary(Integer.toHexString(instances.toString().hashCode()), version, count);
+    }
+
+    public MatchSummary localMatchSummary() {
+        return new MatchSummary(instance, family.version.get(), family.count.get());
+    }
+
+    /**
+     * A person owned by this instance
+     */
+    public Optional<Person> getOwnedPerson(int id) {
+        return repository.get(id);
+    }
+
+    public List<PatternDefinition> patterns() {
+        return patterns.stream().map(matches -> matches.pattern().definition()).toList();
+    }
+
+    /**
+     * Register a pattern, or replace the one with the same name, and evaluate it for everyone
+     * Blocks all writers while it runs.
+     *
+     * @throws IllegalArgumentException when the definition is invalid
+     */
+    public void registerPattern(PatternDefinition definition) {
+        final var pattern = CompiledPattern.compile(definition);
+        final var notify = new ArrayList<Integer>();
+        final List<Integer> deferred;
+
+        try (final var _ = locks.lockAll()) {
+            final var existing = find(definition.name());
+            final PatternMatches matches;
+
+            if (existing.isPresent()) {
+                matches = existing.get();
+                matches.replace(pattern, today);
+            } else {
+                matches = new PatternMatches(pattern, today);
+
+                final var registered = new ArrayList<>(patterns);
+                registered.add(matches);
+                patterns = List.copyOf(registered);
             }
+
+            retrackComingOfAge();
+
+            final var ids = new HashSet<>(matches.ids);
+            addCandidates(matches, ids);
+
+            // The other patterns are unaffected, nothing changed while all locks are held
+            deferred = evaluateAll(ids, List.of(matches), notify);
         }
 
-        return result;
+        reevaluateEach(deferred, remoteReads(), notify);
+        notifyOwners(notify);
+    }
+
+    /**
+     * @return false when there is no such pattern
+     * @throws IllegalArgumentException for the default pattern
+     */
+    public boolean removePattern(String name) {
+        if (DEFAULT_PATTERN.equals(name)) {
+            throw new IllegalArgumentException("the default pattern can be replaced but not removed");
+        }
+
+        try (final var _ = locks.lockAll()) {
+            final var existing = find(name);
+
+            if (existing.isEmpty()) {
+                return false;
+            }
+
+            final var registered = new ArrayList<>(patterns);
+            registered.remove(existing.get());
+            patterns = List.copyOf(registered);
+
+            retrackComingOfAge();
+
+            return true;
+        }
+    }
+
+    /**
+     * Add everyone who could satisfy the pattern, as far as the shape index can tell
+     * Only call while holding all locks.
+     */
+    private void addCandidates(PatternMatches matches, Set<Integer> ids) {
+        final var definition = matches.pattern().definition();
+        final var partner = switch (definition.partner()) {
+            case REQUIRED -> Boolean.TRUE;
+            case ABSENT -> Boolean.FALSE;
+            case ANY -> null;
+        };
+        final var minChildren = Math.max(definition.minChildren(), definition.minMinorChildren());
+        final var maxChildren = definition.maxChildren() == null ? Integer.MAX_VALUE : definition.maxChildren();
+
+        repository.candidates(partner, minChildren, maxChildren).ifPresentOrElse(
+                ids::addAll,
+                () -> repository.people().forEach(person -> ids.add(person.getId())));
+    }
+
+    private Optional<PatternMatches> find(String name) {
+        return patterns.stream()
+                .filter(matches -> matches.pattern().definition().name().equals(name))
+                .findFirst();
+    }
+
+    /**
+     * Listeners are told about changes to the matches of the default pattern
+     */
+    public void addMatchListener(MatchListener listener) {
+        matchListeners.add(listener);
     }
 
     /**
      * Add or update a person in the graph
      * Maintains bidirectional integrity automatically
      */
-    public synchronized void addOrUpdatePerson(Person person) {
-        final Integer personId = person.getId();
-        final var existingPerson = repository.get(personId);
+    public void addOrUpdatePerson(Person person) {
+        write(new PersonMutation.Put(person), log, true);
+    }
+
+    /**
+     * Add or update many people in one pass
+     * The pattern is evaluated once at the end, for the union of everything the batch touched
+     */
+    public void addOrUpdatePeople(Collection<Person> people) {
+        final var affected = new HashSet<Integer>();
 
-        existingPerson.ifPresent(this::removeAllRelationships);
+        for (final var person : people) {
+            affected.addAll(write(new PersonMutation.Put(person), log, false));
+        }
 
-        repository.put(person);
+        final var notify = new ArrayList<Integer>();
+        reevaluateEach(affected, remoteReads(), notify);
+        notifyOwners(notify);
+    }
 
-        establishRelationships(person);
+    public void deletePerson(Person person) {
+        write(new PersonMutation.Delete(person.getId()), log, true);
     }
 
-    public synchronized void deletePerson(Person person) {
-        final var existingPerson = repository.get(person.getId());
+    /**
+     * Apply a mutation recovered from the write-ahead log
+     * It is not logged again and not evaluated, recovery finishes with a {@link #rebuild()}.
+     * Only local state is restored: other instances replay their side of every relationship from their own log.
+     */
+    public void replay(PersonMutation mutation) {
+        if (cluster.owns(mutation.id())) {
+            apply(mutation, MutationLog.NONE, false, true);
+        }
+    }
 
-        existingPerson.ifPresent(this::removeAllRelationships);
+    /**
+     * Re-evaluate everything from scratch, used after recovery
+     * Blocks all writers while it runs, the evaluation itself is spread over the evaluation pool.
+     */
+    public void rebuild() {
+        final var notify = new ArrayList<Integer>();
+        final List<Integer> deferred;
+
+        try (final var _ = locks.lockAll()) {
+            retrackComingOfAge();
+
+            final var registered = patterns;
+            deferred = evaluateAll(candidates(registered), registered, notify);
+        }
 
-        repository.delete(person.getId());
+        reevaluateEach(deferred, remoteReads(), notify);
+        notifyOwners(notify);
     }
 
     /**
-     * Remove all relationships for a person (used during updates)
+     * Check everyone who could match against the match indexes, without blocking writers
+     * The pass runs in parallel over a snapshot. Only people whose result disagrees with the index
+     * are re-evaluated under their lock, which also settles writes that raced with the pass.
+     *
+     * @return the number of people that had to be re-evaluated
      */
-    private void removeAllRelationships(Person person) {
-        final var personId = person.getId();
+    public int sweep() {
+        final var registered = patterns;
+        final var ids = owned(candidates(registered));
+        final boolean[][] matched;
 
-        // Remove partner relationship
-        if (person.getPartnerId().isPresent()) {
-            final var partner = repository.get(person.getPartnerId().get());
-            partner.ifPresent(value -> value.setPartnerId(null));
+        try (final var snapshot = repository.snapshot()) {
+            matched = evaluator.evaluate(ids, registered, id -> cluster.owns(id) ? snapshot.get(id) : cluster.get(id));
         }
 
-        // Remove parents
-        for (final var childId : person.getChildrenIds()) {
-            final var child = repository.get(childId);
-            child.ifPresent(value -> value.removeParent(personId));
+        final var disagreeing = new ArrayList<Integer>();
+
+        for (int i = 0; i < ids.length; i++) {
+            for (int p = 0; p < matched.length; p++) {
+                if (matched[p][i] != registered.get(p).ids.contains(ids[i])) {
+                    disagreeing.add(ids[i]);
+                    break;
+                }
+            }
+        }
+
+        final var notify = new ArrayList<Integer>();
+        reevaluateEach(disagreeing, remoteReads(), notify);
+        notifyOwners(notify);
+
+        return disagreeing.size();
+    }
+
+    /**
+     * Current matches and everyone whose shape fits one of the patterns
+     */
+    private Set<Integer> candidates(List<PatternMatches> registered) {
+        final var ids = new HashSet<Integer>();
+
+        for (final var matches : registered) {
+            ids.addAll(matches.ids);
+            addCandidates(matches, ids);
         }
 
-        // Remove children
-        for (final var parentId : person.getParentIds()) {
-            final var parent = repository.get(parentId);
-            parent.ifPresent(value -> value.removeChild(personId));
+        return ids;
+    }
+
+    private int[] owned(Collection<Integer> ids) {
+        return ids.stream().filter(cluster::owns).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Evaluate many people in parallel against a snapshot, then bring the match indexes in line
+     * Callers hold every lock, so the snapshot is the current state. People with relatives owned by
+     * other instances are left to the caller, to be evaluated once the locks are released.
+     *
+     * @param notify collects the ids owned by other instances
+     * @return the owned ids that still need an evaluation
+     */
+    private List<Integer> evaluateAll(Collection<Integer> ids, List<PatternMatches> which, Collection<Integer> notify) {
+        final var started = System.nanoTime();
+        final var deferred = new ArrayList<Integer>();
+        final int[] owned;
+
+        if (partitioned) {
+            final var ready = new ArrayList<Integer>();
+
+            for (final var id : ids) {
+                if (!cluster.owns(id)) {
+                    notify.add(id);
+                } else if (remoteNeighbours(id).isEmpty()) {
+                    ready.add(id);
+                } else {
+                    deferred.add(id);
+                }
+            }
+
+            owned = ready.stream().mapToInt(Integer::intValue).toArray();
+        } else {
+            owned = owned(ids);
+        }
+
+        final boolean[][] matched;
+
+        try (final var snapshot = repository.snapshot()) {
+            matched = evaluator.evaluate(owned, which, snapshot::get);
+        }
+
+        for (int p = 0; p < matched.length; p++) {
+            final var matches = which.get(p);
+            var changed = false;
+
+            for (int i = 0; i < owned.length; i++) {
+                if (matched[p][i] ? matches.add(owned[i]) : matches.remove(owned[i])) {
+                    matchChanged(matches, owned[i], matched[p][i]);
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                matches.version.incrementAndGet();
+            }
+        }
+
+        metrics.evaluation(System.nanoTime() - started);
+
+        return deferred;
+    }
+
+    /**
+     * @param evaluateNow re-evaluate the affected ids while still holding their locks
+     * @return the affected ids
+     */
+    private Set<Integer> write(PersonMutation mutation, MutationLog log, boolean evaluateNow) {
+        if (!cluster.owns(mutation.id())) {
+            // The owner logs, applies and evaluates it
+            cluster.forward(mutation);
+            return Set.of();
+        }
+
+        // Re-sends of the stored record change nothing, not even the log
+        if (mutation instanceof PersonMutation.Put(var person) && isStored(person)) {
+            metrics.unchangedSkipped();
+            return Set.of();
         }
+
+        if (!evaluateNow) {
+            return executor.execute(affectedBy(mutation), () -> apply(mutation, log, false, false));
+        }
+
+        return executor.execute(affectedBy(mutation), () -> apply(mutation, log, true, false), () -> apply(mutation, log, false, false), batchEvaluation);
     }
 
     /**
-     * Establish bidirectional relationships for a person
+     * Evaluate everything a batch of mutations touched in one pass, under one lock acquisition
      */
-    private void establishRelationships(Person person) {
-        addPartnerRelationship(person);
-        addParentRelationshipToChildren(person);
-        addChildrenToParents(person);
+    private void evaluateBatch(Set<Integer> affected) {
+        final var reads = remoteReads();
+        final var notify = new ArrayList<Integer>();
+        final List<Integer> deferred;
+
+        prefetch(affected, reads);
+
+        try (final var _ = locks.lock(affected)) {
+            deferred = reevaluateReady(affected, reads, notify);
+        }
+
+        reevaluateEach(deferred, reads, notify);
+        notifyOwners(notify);
     }
 
-    private void addPartnerRelationship(Person person) {
-        if (person.getPartnerId().isPresent()) {
-            final var maybePartner = repository.get(person.getPartnerId().get());
+    /**
+     * @param replaying only restore local state, without reading from or writing to other instances
+     */
+    private Set<Integer> apply(PersonMutation mutation, MutationLog log, boolean evaluateNow, boolean replaying) {
+        final var started = System.nanoTime();
+        final var remote = new ArrayList<RelationshipChange>();
+        final var reads = replaying ? RemoteReads.LOCAL : remoteReads();
+        final var notify = new ArrayList<Integer>();
+        Collection<Integer> deferred = List.of();
+        Set<Integer> affected;
+
+        while (true) {
+            // Relatives owned by other instances are read now, while no lock is held
+            affected = affectedBy(mutation, id -> cluster.owns(id) ? repository.get(id) : reads.fetch(id));
 
-            if (maybePartner.isEmpty()) {
-                final var partner = new Person(person.getPartnerId().get());
-                partner.setPartnerId(person.getId());
-                repository.put(partner);
-            } else {
-                maybePartner.get().setPartnerId(person.getId());
+            if (evaluateNow) {
+                prefetch(affected, reads);
+
+                if (mutation instanceof PersonMutation.Put(var person)) {
+                    reads.fetchAll(remoteRelatives(person));
+                }
             }
+
+            final var waitStarted = System.nanoTime();
+
+            try (final var held = locks.lock(affected)) {
+                metrics.lockWait(System.nanoTime() - waitStarted);
+
+                // The neighbourhood may have changed while we were waiting for the locks
+                final var current = affectedBy(mutation, id -> cluster.owns(id) ? repository.get(id) : reads.cached(id));
+
+                if (reads.missed() || !held.covers(current)) {
+                    continue;
+                }
+
+                // Logged under the same locks, so conflicting mutations are logged in the order they are applied
+                log.append(mutation);
+
+                try (final var write = repository.beginWrite()) {
+                    switch (mutation) {
+                        case PersonMutation.Put(var person) -> {
+                            final var existing = write.get(person.getId()).orElseGet(() -> new Person(person.getId()));
+
+                            write.put(person);
+
+                            relink(write, existing, person, remote);
+
+                            trackComingOfAge(person);
+                        }
+                        case PersonMutation.Delete(var id) -> {
+                            write.get(id).ifPresent(existing -> relink(write, existing, new Person(id), remote));
+
+                            write.delete(id);
+                            executor.deleted(id);
+                        }
+                    }
+                }
+
+                metrics.mutation(System.nanoTime() - started);
+                committed(affected);
+
+                // Evaluated after the commit, the pattern is checked against committed data.
+                // With relatives changed on other instances it waits until both sides are in place.
+                if (evaluateNow) {
+                    deferred = remote.isEmpty() ? reevaluateReady(affected, reads, notify) : affected;
+                }
+
+                break;
+            }
+        }
+
+        // Other instances are only called once every lock here is released, so instances
+        // waiting on each other can never deadlock
+        if (!remote.isEmpty() && !replaying) {
+            cluster.changeRelationships(remote);
+        }
+
+        reevaluateEach(deferred, remote.isEmpty() ? reads : remoteReads(), notify);
+        notifyOwners(notify);
+
+        return affected;
+    }
+
+    /**
+     * Only once committed, a reader that sees the new version also sees the new data
+     */
+    private void committed(Collection<Integer> changed) {
+        for (final var matches : patterns) {
+            if (changed.stream().anyMatch(matches.ids::contains)) {
+                matches.version.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Apply relationship changes sent by the instance owning the other side of each relationship
+     * Only the changed people are written, the sender re-evaluates everyone affected.
+     */
+    public void applyRelationshipChanges(Collection<RelationshipChange> changes) {
+        for (final var change : changes) {
+            final var remote = new ArrayList<RelationshipChange>();
+
+            try (final var _ = locks.lock(List.of(change.id())); final var write = repository.beginWrite()) {
+                change(write, change, remote);
+
+                // Logged as the person it results in, so replaying the log needs no other instance
+                write.get(change.id()).ifPresent(person -> log.append(new PersonMutation.Put(person)));
+            }
+
+            committed(List.of(change.id()));
+        }
+    }
+
+    /**
+     * Re-evaluate people owned by this instance on request of another one
+     */
+    public void reevaluateOwned(Collection<Integer> ids) {
+        // Stamped first, so evaluations that read remote relatives before now notice they are stale
+        for (final var id : ids) {
+            remoteChangedAt.accumulateAndGet(id & (remoteChangedAt.length() - 1), remoteChanges.incrementAndGet(), Math::max);
+        }
+
+        final var notify = new ArrayList<Integer>();
+        reevaluateEach(ids.stream().filter(cluster::owns).toList(), remoteReads(), notify);
+        notifyOwners(notify);
+    }
+
+    /**
+     * Move the age checks to a new day
+     * Only families with a child growing out of a minor age in the meantime are re-evaluated, no rescan needed.
+     */
+    public void advanceToday(LocalDate today) {
+        this.today = today;
+
+        final var registered = patterns;
+        registered.forEach(matches -> matches.advanceToday(today));
+
+        final var due = comingOfAge.headMap(today.toEpochDay(), true);
+        final var parents = new ArrayList<Integer>();
+        final var notify = new ArrayList<Integer>();
+
+        for (var entry = due.pollFirstEntry(); entry != null; entry = due.pollFirstEntry()) {
+            for (final var childId : entry.getValue()) {
+                final var parentIds = repository.get(childId).map(Person::getParentIds).orElse(IdSet.EMPTY);
+
+                for (final var parentId : parentIds) {
+                    if (!cluster.owns(parentId)) {
+                        notify.add(parentId);
+                        continue;
+                    }
+
+                    // Patterns only ask for a minimum number of minors, growing up can only make a match stop matching
+                    if (registered.stream().anyMatch(matches -> matches.ids.contains(parentId))) {
+                        parents.add(parentId);
+                    }
+                }
+            }
+        }
+
+        reevaluateEach(parents, remoteReads(), notify);
+        notifyOwners(notify);
+    }
+
+    private void trackComingOfAge(Person person) {
+        for (final var matches : patterns) {
+            final var definition = matches.pattern().definition();
+
+            if (!definition.hasAgeRequirement() || !person.isBornAfter(matches.minorCutoffEpochDay())) {
+                continue;
+            }
+
+            person.dayOfTurning(definition.minorAge()).ifPresent(day -> comingOfAge
+                    .computeIfAbsent(day.toEpochDay(), _ -> ConcurrentHashMap.newKeySet())
+                    .add(person.getId()));
+        }
+    }
+
+    /**
+     * Only call while holding all locks
+     */
+    private void retrackComingOfAge() {
+        comingOfAge.clear();
+        repository.people().forEach(this::trackComingOfAge);
+    }
+
+    /**
+     * Work off up to {@code budget} tombstones, reclaiming relatives that were only kept alive
+     * by a relationship with the deleted person
+     *
+     * @return the number of tombstones processed
+     */
+    public int compactTombstones(int budget) {
+        int processed = 0;
+
+        while (processed < budget) {
+            final var tombstone = repository.pollTombstone();
+
+            if (tombstone.isEmpty()) {
+                break;
+            }
+
+            for (final var relatedId : tombstone.get().relatedIds()) {
+                // Placeholders on other instances are left to them
+                if (!cluster.owns(relatedId)) {
+                    continue;
+                }
+
+                try (final var _ = locks.lock(List.of(relatedId)); final var write = repository.beginWrite()) {
+                    // Only auto-created people, a posted record stays even when it holds no data
+                    write.get(relatedId)
+                            .filter(person -> person.isPlaceholder() && person.isEmptyPlaceholder())
+                            .ifPresent(placeholder -> {
+                                write.delete(placeholder.getId());
+                                executor.deleted(placeholder.getId());
+                            });
+                }
+            }
+
+            processed++;
         }
+
+        return processed;
+    }
+
+    /**
+     * Ids touched by a mutation: the neighbourhood of the incoming record and of the record it
+     * replaces or deletes. This is both the lock set and the set to re-evaluate.
+     */
+    private Set<Integer> affectedBy(PersonMutation mutation) {
+        return affectedBy(mutation, this::lookup);
+    }
+
+    /**
+     * @param lookup finds relatives, {@link RemoteReads#cached(int)} for those owned elsewhere while holding locks
+     */
+    private Set<Integer> affectedBy(PersonMutation mutation, IntFunction<Optional<Person>> lookup) {
+        final var ids = switch (mutation) {
+            case PersonMutation.Put(var person) -> neighbourhood(person, lookup);
+            case PersonMutation.Delete(var id) -> new HashSet<>(List.of(id));
+        };
+
+        repository.get(mutation.id()).ifPresent(existing -> ids.addAll(neighbourhood(existing, lookup)));
+
+        return ids;
     }
 
-    private void addParentRelationshipToChildren(Person person) {
+    /**
+     * Ids whose pattern result can change when the given person changes:
+     * the person, its partner, its parents, its children and the children's other parents
+     */
+    private Set<Integer> neighbourhood(Person person, IntFunction<Optional<Person>> lookup) {
+        final var ids = new HashSet<Integer>();
+
+        ids.add(person.getId());
+
+        if (person.hasPartner()) {
+            ids.add(person.partnerId());
+        }
+
+        ids.addAll(person.getParentIds());
+
         for (final var childId : person.getChildrenIds()) {
-            final var maybeChild = repository.get(childId);
+            ids.add(childId);
+            lookup.apply(childId).ifPresent(child -> ids.addAll(child.getParentIds()));
+        }
 
-            if (maybeChild.isEmpty()) {
-                final var child = new Person(childId);
-                child.addParent(person.getId());
-                repository.put(child);
+        return ids;
+    }
+
+    /**
+     * Evaluate the ids whose relatives on other instances were read in advance, while their locks are held
+     *
+     * @param notify collects the ids owned by other instances
+     * @return the owned ids that still need an evaluation once the locks are released
+     */
+    private List<Integer> reevaluateReady(Collection<Integer> ids, RemoteReads reads, Collection<Integer> notify) {
+        if (!partitioned) {
+            reevaluate(ids, reads, notify);
+            return List.of();
+        }
+
+        final var ready = new ArrayList<Integer>();
+        final var deferred = new ArrayList<Integer>();
+
+        for (final var id : ids) {
+            if (!cluster.owns(id) || (reads.hasAll(remoteNeighbours(id)) && !stale(id, reads))) {
+                ready.add(id);
             } else {
-                maybeChild.get().addParent(person.getId());
+                deferred.add(id);
             }
         }
+
+        reevaluate(ready, reads, notify);
+
+        return deferred;
     }
 
-    private void addChildrenToParents(Person person) {
-        for (final var parentId : person.getParentIds()) {
-            final var maybeParent = repository.get(parentId);
+    /**
+     * Evaluate ids one at a time under their own lock, reading their relatives on other instances before each lock
+     *
+     * @param notify collects the ids owned by other instances
+     */
+    private void reevaluateEach(Collection<Integer> ids, RemoteReads reads, Collection<Integer> notify) {
+        for (final var id : ids) {
+            if (!cluster.owns(id)) {
+                notify.add(id);
+                continue;
+            }
+
+            while (true) {
+                if (stale(id, reads)) {
+                    reads.clear(remoteChanges.get());
+                }
 
-            if (maybeParent.isEmpty()) {
-                final var parent = new Person(parentId);
-                parent.addChild(person.getId());
-                repository.put(parent);
-            } else {
-                maybeParent.get().addChild(person.getId());
+                reads.fetchAll(remoteNeighbours(id));
+
+                try (final var _ = locks.lock(List.of(id))) {
+                    // Relatives may have been added or changed while we were reading
+                    if (reads.hasAll(remoteNeighbours(id)) && !stale(id, reads)) {
+                        reevaluate(List.of(id), reads, notify);
+                        break;
+                    }
+                }
             }
         }
     }
 
+    private RemoteReads remoteReads() {
+        return new RemoteReads(cluster, remoteChanges.get());
+    }
+
+    /**
+     * Whether another instance reported a change around this id after the reads started
+     * Checked under the id's lock, so a stale result is never applied after the evaluation the report caused.
+     */
+    private boolean stale(int id, RemoteReads reads) {
+        return partitioned && remoteChangedAt.get(id & (remoteChangedAt.length() - 1)) > reads.since();
+    }
+
+    /**
+     * Read the relatives on other instances that evaluating these ids will look at, only call while holding no lock
+     */
+    private void prefetch(Collection<Integer> ids, RemoteReads reads) {
+        for (final var id : ids) {
+            reads.fetchAll(remoteNeighbours(id));
+        }
+    }
+
     /**
-     * Check if a specific person satisfies the pattern
+     * Partner and children owned by other instances, what a {@link Neighbourhood} of this person reads remotely
      */
-    private boolean satisfiesPattern(Person person) {
-        // 1. Must have a partner
-        if (person.getPartnerId().isEmpty()) {
-            return false;
+    private List<Integer> remoteNeighbours(int id) {
+        if (!partitioned || !cluster.owns(id)) {
+            return List.of();
         }
 
-        final var partner = repository.get(person.getPartnerId().get());
-        if (partner.isEmpty()) {
-            return false;
+        return repository.get(id).map(this::remoteRelatives).orElse(List.of());
+    }
+
+    private List<Integer> remoteRelatives(Person person) {
+        if (!partitioned) {
+            return List.of();
         }
 
-        // 2. Must have exactly 3 children
-        final var childrenIds = person.getChildrenIds();
-        if (childrenIds.size() != 3) {
-            return false;
+        final var ids = new ArrayList<Integer>();
+
+        if (person.hasPartner() && !cluster.owns(person.partnerId())) {
+            ids.add(person.partnerId());
         }
 
-        // 2. All 3 children must have the same partner listed as mother or father
-        final var partnerId = person.getPartnerId().get();
-        boolean hasMinorChild = false;
+        for (final var childId : person.getChildrenIds()) {
+            if (!cluster.owns(childId)) {
+                ids.add(childId);
+            }
+        }
 
-        for (final var childId : childrenIds) {
-            final var maybeChild = repository.get(childId);
-            if (maybeChild.isEmpty()) {
-                return false;
+        return ids;
+    }
+
+    /**
+     * Have the owners re-evaluate their people, only call while holding no lock
+     */
+    private void notifyOwners(Collection<Integer> ids) {
+        if (!ids.isEmpty()) {
+            cluster.reevaluate(ids.stream().distinct().toList());
+        }
+    }
+
+    /**
+     * Update the match indexes for the given ids only
+     * Each person's neighbourhood is collected once and shared by every registered pattern.
+     * Relatives owned by other instances are only taken from {@code reads}, so no other instance is called.
+     *
+     * @param notify collects the ids owned by other instances, for their owners to re-evaluate
+     */
+    private void reevaluate(Collection<Integer> ids, RemoteReads reads, Collection<Integer> notify) {
+        final var started = System.nanoTime();
+        final var registered = patterns;
+        final var changed = new boolean[registered.size()];
+        final IntFunction<Optional<Person>> lookup = id -> cluster.owns(id) ? repository.get(id) : reads.cached(id);
+
+        for (final var id : ids) {
+            if (!cluster.owns(id)) {
+                notify.add(id);
+                continue;
             }
 
-            final var child = maybeChild.get();
+            final var person = repository.get(id);
+            final var neighbourhood = person.map(value -> new Neighbourhood(value, lookup));
 
-            // Check if the partner is listed as a parent of this child
-            if (!child.getParentIds().contains(partnerId)) {
-                return false;
+            for (int i = 0; i < changed.length; i++) {
+                final var matches = registered.get(i);
+
+                if (neighbourhood.isPresent() && matches.matches(neighbourhood.get())) {
+                    if (matches.add(id)) {
+                        matchChanged(matches, id, true);
+                        changed[i] = true;
+                    }
+                } else if (matches.remove(id)) {
+                    matchChanged(matches, id, false);
+                    changed[i] = true;
+                }
+            }
+        }
+
+        for (int i = 0; i < changed.length; i++) {
+            if (changed[i]) {
+                registered.get(i).version.incrementAndGet();
             }
+        }
+
+        metrics.evaluation(System.nanoTime() - started);
+    }
+
+    /**
+     * A person, wherever in the cluster it is owned
+     */
+    private Optional<Person> lookup(int id) {
+        return cluster.owns(id) ? repository.get(id) : cluster.get(id);
+    }
+
+    private void matchChanged(PatternMatches matches, int id, boolean matching) {
+        if (matches == family) {
+            matchListeners.forEach(listener -> listener.matchChanged(id, matching));
+        }
+    }
+
+    /**
+     * Keep the relatives in line with a person changing from {@code before} to {@code after}
+     * Only edges that differ are changed, edges both versions have are only repaired when a
+     * relative owned here lost its side of it.
+     */
+    private void relink(PeopleRepository.Write write, Person before, Person after, List<RelationshipChange> remote) {
+        final var personId = after.getId();
+        final var samePartner = before.hasPartner() && after.hasPartner() && before.partnerId() == after.partnerId();
+
+        if (before.hasPartner() && !samePartner) {
+            change(write, new RelationshipChange(before.partnerId(), RelationshipChange.Kind.CLEAR_PARTNER, personId), remote);
+        }
+
+        if (after.hasPartner()) {
+            relink(write, new RelationshipChange(after.partnerId(), RelationshipChange.Kind.SET_PARTNER, personId), samePartner, remote);
+        }
+
+        relink(write, personId, before.getChildrenIds(), after.getChildrenIds(), RelationshipChange.Kind.REMOVE_PARENT, RelationshipChange.Kind.ADD_PARENT, remote);
+        relink(write, personId, before.getParentIds(), after.getParentIds(), RelationshipChange.Kind.REMOVE_CHILD, RelationshipChange.Kind.ADD_CHILD, remote);
+    }
 
-            // 3. Check if at least one child is under 18
-            if (child.getAge().isPresent() && child.getAge().get() < 18) {
-                hasMinorChild = true;
+    private void relink(
+            PeopleRepository.Write write,
+            int personId,
+            IdSet before,
+            IdSet after,
+            RelationshipChange.Kind remove,
+            RelationshipChange.Kind add,
+            List<RelationshipChange> remote
+    ) {
+        for (int i = 0; i < before.size(); i++) {
+            if (!after.contains(before.get(i))) {
+                change(write, new RelationshipChange(before.get(i), remove, personId), remote);
             }
         }
 
-        return hasMinorChild;
+        for (int i = 0; i < after.size(); i++) {
+            relink(write, new RelationshipChange(after.get(i), add, personId), before.contains(after.get(i)), remote);
+        }
+    }
+
+    /**
+     * @param unchanged whether the previous version already had this edge
+     */
+    private void relink(PeopleRepository.Write write, RelationshipChange change, boolean unchanged, List<RelationshipChange> remote) {
+        // Checking the other side of an unchanged edge is a lookup here, but a call to another instance
+        if (!unchanged || cluster.owns(change.id())) {
+            change(write, change, remote);
+        }
+    }
+
+    /**
+     * Whether the newest stored version of the person has exactly this content
+     */
+    private boolean isStored(Person person) {
+        return repository.get(person.getId()).filter(person::sameContent).isPresent();
+    }
+
+    /**
+     * Apply the change to a relative owned here, auto-creating it when needed, or queue it for its owner
+     */
+    private void change(PeopleRepository.Write write, RelationshipChange change, List<RelationshipChange> remote) {
+        if (!cluster.owns(change.id())) {
+            remote.add(change);
+            return;
+        }
+
+        // Copy-on-write is only paid for relatives that actually change
+        if (write.get(change.id()).filter(change::isAppliedTo).isPresent()) {
+            return;
+        }
+
+        final var relative = write.edit(change.id());
+
+        if (relative.isPresent()) {
+            change.applyTo(relative.get());
+        } else if (change.creates()) {
+            final var placeholder = Person.placeholder(change.id());
+            change.applyTo(placeholder);
+            write.put(placeholder);
+            metrics.placeholderCreated();
+        }
     }
 }
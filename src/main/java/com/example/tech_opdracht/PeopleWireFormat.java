@@ -0,0 +1,200 @@
+package com.example.tech_opdracht;
+
+import org.springframework.http.MediaType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Compact binary encoding of people on the REST API, negotiated as {@value #MEDIA_TYPE_VALUE}
+ * <p>
+ * A record is a flags byte followed by the fields it announces: id, partner, birth date as epoch day,
+ * name, two parents and the children. Numbers are zigzag varints and the name is length-prefixed UTF-8.
+ * Records are self-delimiting, so a match list is just its records back to back.
+ */
+final class PeopleWireFormat {
+    static final String MEDIA_TYPE_VALUE = "application/x-people";
+    static final MediaType MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE_VALUE);
+
+    private static final int HAS_PARTNER = 1;
+    private static final int HAS_BIRTH_DATE = 2;
+    private static final int HAS_NAME = 4;
+    private static final int HAS_PARENT1 = 8;
+    private static final int HAS_PARENT2 = 16;
+
+    private PeopleWireFormat() {
+    }
+
+    /**
+     * Encode a person, without going through {@link PersonDTO}
+     */
+    static void write(Person person, OutputStream out) throws IOException {
+        final var parents = person.getParentIds();
+        final var children = person.getChildrenIds();
+        final var birthDate = person.getBirthDate();
+
+        write(out,
+                person.getId(),
+                person.getName(),
+                birthDate == null ? null : birthDate.toEpochDay(),
+                person.getPartnerId().orElse(null),
+                parents.size() > 0 ? parents.get(0) : null,
+                parents.size() > 1 ? parents.get(1) : null);
+
+        writeVarint(children.size(), out);
+        for (int i = 0; i < children.size(); i++) {
+            writeVarint(children.get(i), out);
+        }
+    }
+
+    /**
+     * Decode the next record straight into a person
+     *
+     * @return the next record, null at the end of the stream
+     * @throws EOFException when the stream ends inside a record
+     * @throws DateTimeException when the birth date is out of range
+     */
+    static Person readPerson(InputStream in) throws IOException {
+        final var flags = in.read();
+
+        if (flags < 0) {
+            return null;
+        }
+
+        final var person = new Person(readVarint(in));
+
+        if ((flags & HAS_PARTNER) != 0) {
+            person.setPartnerId(readVarint(in));
+        }
+
+        if ((flags & HAS_BIRTH_DATE) != 0) {
+            final var epochDay = readVarint(in);
+
+            // Stored as "no birth date", taking it would silently drop the date
+            if (epochDay == Integer.MIN_VALUE) {
+                throw new DateTimeException("epoch day out of range");
+            }
+
+            person.setBirthDate(LocalDate.ofEpochDay(epochDay));
+        }
+
+        if ((flags & HAS_NAME) != 0) {
+            person.setName(readString(in));
+        }
+
+        final var parents = new int[2];
+        var parentCount = 0;
+
+        if ((flags & HAS_PARENT1) != 0) {
+            parents[parentCount++] = readVarint(in);
+        }
+
+        if ((flags & HAS_PARENT2) != 0) {
+            parents[parentCount++] = readVarint(in);
+        }
+
+        final var children = new int[readCount(in)];
+
+        for (int i = 0; i < children.length; i++) {
+            children[i] = readVarint(in);
+        }
+
+        person.setParentIds(IdSet.of(parents, parentCount));
+        person.setChildrenIds(IdSet.of(children, children.length));
+
+        return person;
+    }
+
+    private static void write(OutputStream out, int id, String name, Long epochDay, Integer partner, Integer parent1, Integer parent2) throws IOException {
+        out.write((partner != null ? HAS_PARTNER : 0)
+                | (epochDay != null ? HAS_BIRTH_DATE : 0)
+                | (name != null ? HAS_NAME : 0)
+                | (parent1 != null ? HAS_PARENT1 : 0)
+                | (parent2 != null ? HAS_PARENT2 : 0));
+        writeVarint(id, out);
+
+        if (partner != null) {
+            writeVarint(partner, out);
+        }
+
+        if (epochDay != null) {
+            writeVarint(Math.toIntExact(epochDay), out);
+        }
+
+        if (name != null) {
+            final var bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length, out);
+            out.write(bytes);
+        }
+
+        if (parent1 != null) {
+            writeVarint(parent1, out);
+        }
+
+        if (parent2 != null) {
+            writeVarint(parent2, out);
+        }
+    }
+
+    /**
+     * Zigzag, so small negative numbers (birth dates before 1970) stay short as well
+     */
+    private static void writeVarint(int value, OutputStream out) throws IOException {
+        var bits = (value << 1) ^ (value >> 31);
+
+        while ((bits & ~0x7F) != 0) {
+            out.write((bits & 0x7F) | 0x80);
+            bits >>>= 7;
+        }
+
+        out.write(bits);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        var bits = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            final var b = in.read();
+
+            if (b < 0) {
+                throw new EOFException("record ends inside a number");
+            }
+
+            bits |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return (bits >>> 1) ^ -(bits & 1);
+            }
+        }
+
+        throw new IOException("number longer than 5 bytes");
+    }
+
+    private static int readCount(InputStream in) throws IOException {
+        final var count = readVarint(in);
+
+        // Never trust a count enough to allocate more than a request could hold
+        if (count < 0 || count > 1 << 16) {
+            throw new IOException("invalid count " + count);
+        }
+
+        return count;
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        final var length = readCount(in);
+
+        final var bytes = in.readNBytes(length);
+
+        if (bytes.length < length) {
+            throw new EOFException("record ends inside a name");
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
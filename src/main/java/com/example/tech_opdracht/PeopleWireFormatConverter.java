@@ -0,0 +1,58 @@
+package com.example.tech_opdracht;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.time.DateTimeException;
+
+/**
+ * Reads and writes people in {@link PeopleWireFormat}, request bodies are decoded straight into {@link Person}
+ */
+public class PeopleWireFormatConverter extends AbstractHttpMessageConverter<Person> {
+
+    public PeopleWireFormatConverter() {
+        super(PeopleWireFormat.MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Person.class == clazz;
+    }
+
+    /**
+     * Exactly one record, anything that does not decode into one is a bad request
+     */
+    @Override
+    protected Person readInternal(Class<? extends Person> clazz, HttpInputMessage inputMessage) throws IOException {
+        final var in = new BufferedInputStream(inputMessage.getBody());
+        final Person person;
+
+        try {
+            person = PeopleWireFormat.readPerson(in);
+        } catch (DateTimeException e) {
+            throw new HttpMessageNotReadableException("invalid birth date: " + e.getMessage(), e, inputMessage);
+        }
+
+        if (person == null) {
+            throw new HttpMessageNotReadableException("empty body", inputMessage);
+        }
+
+        if (in.read() >= 0) {
+            throw new HttpMessageNotReadableException("unexpected bytes after the record", inputMessage);
+        }
+
+        return person;
+    }
+
+    @Override
+    protected void writeInternal(Person person, HttpOutputMessage outputMessage) throws IOException {
+        final var out = new BufferedOutputStream(outputMessage.getBody());
+        PeopleWireFormat.write(person, out);
+        out.flush();
+    }
+}
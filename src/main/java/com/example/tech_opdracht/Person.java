@@ -1,83 +1,288 @@
 package com.example.tech_opdracht;
 
 import java.time.LocalDate;
-import java.time.Period;
-import java.util.HashSet;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
 public class Person {
-    private final Integer id;
-    private Integer partnerId;
-    private Set<Integer> childrenIds;
-    private Set<Integer> parentIds;
-    private LocalDate birthDate;
+    /**
+     * Sentinel for "no partner", ids are never expected to be Integer.MIN_VALUE
+     */
+    private static final int NO_PARTNER = Integer.MIN_VALUE;
+    private static final int NO_BIRTH_DATE = Integer.MIN_VALUE;
+
+    private final int id;
+    private volatile int partnerId = NO_PARTNER;
+    private volatile IdSet childrenIds = IdSet.EMPTY;
+    private volatile IdSet parentIds = IdSet.EMPTY;
+    private int birthEpochDay = NO_BIRTH_DATE;
     private String name;
+    /**
+     * Cached {@link #contentHash()}, 0 when not computed since the last change
+     */
+    private int contentHash;
+
+    /**
+     * Version bookkeeping of {@link PeopleRepository}: the write that installed this copy, the copy it
+     * replaced and whether this copy marks a delete
+     */
+    private long version;
+    private volatile Person previous;
+    private boolean deleted;
+    /**
+     * Auto-created for a relationship, replaced by the first real record for this id
+     */
+    private boolean placeholder;
 
-    public Person(Integer id) {
+    public Person(int id) {
         this.id = id;
-        this.childrenIds = new HashSet<>();
-        this.parentIds = new HashSet<>();
     }
 
-    public Integer getId() {
+    /**
+     * Shallow copy, the id sets are immutable so they can be shared
+     */
+    public Person copy() {
+        final var copy = new Person(id);
+        copy.partnerId = partnerId;
+        copy.childrenIds = childrenIds;
+        copy.parentIds = parentIds;
+        copy.birthEpochDay = birthEpochDay;
+        copy.name = name;
+        copy.contentHash = contentHash;
+        copy.placeholder = placeholder;
+
+        return copy;
+    }
+
+    /**
+     * A relative that is only known because someone referred to it
+     * It stays a plain person without name or birth date, and its relationship sets are usually shared
+     * singletons (see {@link IdSet#with(int)}), so it costs little more than its object header.
+     */
+    static Person placeholder(int id) {
+        final var placeholder = new Person(id);
+        placeholder.placeholder = true;
+
+        return placeholder;
+    }
+
+    static Person tombstone(int id) {
+        final var tombstone = new Person(id);
+        tombstone.deleted = true;
+
+        return tombstone;
+    }
+
+    long version() {
+        return version;
+    }
+
+    boolean isAlive() {
+        return !deleted;
+    }
+
+    /**
+     * Auto-created and not yet replaced by a real record
+     */
+    public boolean isPlaceholder() {
+        return placeholder && !deleted;
+    }
+
+    void installAt(long version, Person previous) {
+        this.version = version;
+        this.previous = previous;
+    }
+
+    void dropPrevious() {
+        previous = null;
+    }
+
+    /**
+     * The newest copy in the version chain that is not newer than {@code version}
+     */
+    Person visibleAt(long version) {
+        for (var candidate = this; candidate != null; candidate = candidate.previous) {
+            if (candidate.version <= version) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    public int getId() {
         return id;
     }
 
     public Optional<Integer> getPartnerId() {
-        return Optional.ofNullable(partnerId);
+        return hasPartner() ? Optional.of(partnerId) : Optional.empty();
+    }
+
+    public boolean hasPartner() {
+        return partnerId != NO_PARTNER;
+    }
+
+    /**
+     * The partner id without boxing, only meaningful when {@link #hasPartner()}
+     */
+    public int partnerId() {
+        return partnerId;
     }
 
     public void setPartnerId(Integer partnerId) {
-        this.partnerId = partnerId;
+        this.partnerId = partnerId == null ? NO_PARTNER : partnerId;
+        this.contentHash = 0;
     }
 
-    public Set<Integer> getChildrenIds() {
-        return new HashSet<>(childrenIds);
+    /**
+     * Read-only view, does not copy
+     */
+    public IdSet getChildrenIds() {
+        return childrenIds;
     }
 
     public void setChildrenIds(Set<Integer> childrenIds) {
-        this.childrenIds = new HashSet<>(childrenIds);
+        this.childrenIds = IdSet.of(childrenIds);
+        this.contentHash = 0;
     }
 
-    public Set<Integer> getParentIds() {
-        return new HashSet<>(parentIds);
+    /**
+     * Read-only view, does not copy
+     */
+    public IdSet getParentIds() {
+        return parentIds;
     }
 
     public void setParentIds(Set<Integer> parentIds) {
-        this.parentIds = new HashSet<>(parentIds);
+        this.parentIds = IdSet.of(parentIds);
+        this.contentHash = 0;
     }
 
     public LocalDate getBirthDate() {
-        return birthDate;
+        return birthEpochDay == NO_BIRTH_DATE ? null : LocalDate.ofEpochDay(birthEpochDay);
     }
 
     public void setBirthDate(LocalDate birthDate) {
-        this.birthDate = birthDate;
+        this.birthEpochDay = birthDate == null ? NO_BIRTH_DATE : Math.toIntExact(birthDate.toEpochDay());
+        this.contentHash = 0;
+    }
+
+    /**
+     * Cheap age check: someone born after {@code today.minusYears(n)} is younger than n on {@code today}
+     */
+    public boolean isBornAfter(long epochDay) {
+        return birthEpochDay != NO_BIRTH_DATE && birthEpochDay > epochDay;
     }
 
-    public Optional<Integer> getAge() {
+    /**
+     * The first day on which this person is {@code age} years old, if the birth date is known
+     */
+    public Optional<LocalDate> dayOfTurning(int age) {
+        final var birthDate = getBirthDate();
+
         if (birthDate == null) {
             return Optional.empty();
         }
 
-        return Optional.of(Period.between(birthDate, LocalDate.now()).getYears());
+        // Someone born on February 29th turns a year older on March 1st in a non-leap year
+        final var day = birthDate.plusYears(age);
+        return Optional.of(day.minusYears(age).isBefore(birthDate) ? day.plusDays(1) : day);
     }
 
-    public void addChild(Integer childId) {
-        this.childrenIds.add(childId);
+    public void addChild(int childId) {
+        this.childrenIds = childrenIds.with(childId);
+        this.contentHash = 0;
     }
 
-    public void removeChild(Integer childId) {
-        this.childrenIds.remove(childId);
+    public void removeChild(int childId) {
+        this.childrenIds = childrenIds.without(childId);
+        this.contentHash = 0;
     }
 
-    public void addParent(Integer parentId) {
-        this.parentIds.add(parentId);
+    public void addParent(int parentId) {
+        this.parentIds = parentIds.with(parentId);
+        this.contentHash = 0;
     }
 
-    public void removeParent(Integer parentId) {
-        this.parentIds.remove(parentId);
+    public void removeParent(int parentId) {
+        this.parentIds = parentIds.without(parentId);
+        this.contentHash = 0;
+    }
+
+    /**
+     * Partner, parents and children, the ids that would refer back to this person
+     */
+    public int[] relatedIds() {
+        final var result = new int[(hasPartner() ? 1 : 0) + parentIds.size() + childrenIds.size()];
+        int index = 0;
+
+        if (hasPartner()) {
+            result[index++] = partnerId;
+        }
+
+        for (int i = 0; i < parentIds.size(); i++) {
+            result[index++] = parentIds.get(i);
+        }
+
+        for (int i = 0; i < childrenIds.size(); i++) {
+            result[index++] = childrenIds.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Hash of the name, birth date and relationships, equal for records with the same content
+     */
+    public int contentHash() {
+        var hash = contentHash;
+
+        if (hash == 0) {
+            hash = Objects.hashCode(name);
+            hash = 31 * hash + birthEpochDay;
+            hash = 31 * hash + partnerId;
+            hash = 31 * hash + parentIds.hashCode();
+            hash = 31 * hash + childrenIds.hashCode();
+            contentHash = hash;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Whether both records hold the same name, birth date and relationships
+     * A placeholder never has the same content as a real record, so that record always replaces it.
+     */
+    public boolean sameContent(Person other) {
+        return contentHash() == other.contentHash()
+                && placeholder == other.placeholder
+                && birthEpochDay == other.birthEpochDay
+                && partnerId == other.partnerId
+                && Objects.equals(name, other.name)
+                && parentIds.equals(other.parentIds)
+                && childrenIds.equals(other.childrenIds);
+    }
+
+    /**
+     * A person without any data or relationships, typically a relative that was only auto-created
+     * for a relationship that no longer exists
+     */
+    public boolean isEmptyPlaceholder() {
+        return name == null && birthEpochDay == NO_BIRTH_DATE && !hasPartner() && childrenIds.isEmpty() && parentIds.isEmpty();
+    }
+
+    /**
+     * Rough heap footprint of this person and what it owns
+     */
+    public long estimatedSize() {
+        long size = 56 + childrenIds.estimatedSize() + parentIds.estimatedSize();
+
+        if (name != null) {
+            size += 40 + name.length();
+        }
+
+        return size;
     }
 
     public String getName() {
@@ -86,5 +291,6 @@ public class Person {
 
     public void setName(String name) {
         this.name = name;
+        this.contentHash = 0;
     }
 }
@@ -0,0 +1,129 @@
+package com.example.tech_opdracht;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Compact binary encoding of a person, used by the write-ahead log and snapshots
+ */
+final class PersonCodec {
+    private static final int HAS_PARTNER = 1;
+    private static final int HAS_BIRTH_DATE = 2;
+    /**
+     * Name as a varint byte length and UTF-8
+     */
+    private static final int HAS_NAME = 4;
+    private static final int PLACEHOLDER = 8;
+
+    private PersonCodec() {
+    }
+
+    static void write(Person person, DataOutput out) throws IOException {
+        final var birthDate = person.getBirthDate();
+        final var name = person.getName();
+        final var flags = (person.hasPartner() ? HAS_PARTNER : 0)
+                | (birthDate != null ? HAS_BIRTH_DATE : 0)
+                | (name != null ? HAS_NAME : 0)
+                | (person.isPlaceholder() ? PLACEHOLDER : 0);
+
+        out.writeInt(person.getId());
+        out.writeByte(flags);
+
+        if (person.hasPartner()) {
+            out.writeInt(person.partnerId());
+        }
+
+        if (birthDate != null) {
+            out.writeInt(Math.toIntExact(birthDate.toEpochDay()));
+        }
+
+        if (name != null) {
+            final var bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length, out);
+            out.write(bytes);
+        }
+
+        writeIds(person.getParentIds(), out);
+        writeIds(person.getChildrenIds(), out);
+    }
+
+    static Person read(DataInput in) throws IOException {
+        final var id = in.readInt();
+        final var flags = in.readByte();
+        final var person = (flags & PLACEHOLDER) != 0 ? Person.placeholder(id) : new Person(id);
+
+        if ((flags & HAS_PARTNER) != 0) {
+            person.setPartnerId(in.readInt());
+        }
+
+        if ((flags & HAS_BIRTH_DATE) != 0) {
+            person.setBirthDate(LocalDate.ofEpochDay(in.readInt()));
+        }
+
+        if ((flags & HAS_NAME) != 0) {
+            final var bytes = new byte[readVarint(in)];
+            in.readFully(bytes);
+            person.setName(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        person.setParentIds(readIds(in));
+        person.setChildrenIds(readIds(in));
+
+        return person;
+    }
+
+    private static void writeVarint(int value, DataOutput out) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        var value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            final var b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("invalid length " + value);
+                }
+
+                return value;
+            }
+        }
+
+        throw new IOException("number longer than 5 bytes");
+    }
+
+    private static void writeIds(IdSet ids, DataOutput out) throws IOException {
+        out.writeInt(ids.size());
+
+        for (int i = 0; i < ids.size(); i++) {
+            out.writeInt(ids.get(i));
+        }
+    }
+
+    private static IdSet readIds(DataInput in) throws IOException {
+        final var count = in.readInt();
+
+        if (count < 0) {
+            throw new IOException("invalid count " + count);
+        }
+
+        final var ids = new int[count];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.readInt();
+        }
+
+        return IdSet.of(ids, ids.length);
+    }
+}
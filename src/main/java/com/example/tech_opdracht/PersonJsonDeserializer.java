@@ -0,0 +1,209 @@
+package com.example.tech_opdracht;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Reads a {@link PersonDTO} shaped document straight into a {@link Person}
+ * <p>
+ * No DTO, reference objects or boxed id sets are built on the way: parents and children are collected
+ * as ints and handed to {@link IdSet} in one copy, the birth date is parsed from the parser's own buffer.
+ * A missing or null {@code parent1}, {@code parent2}, {@code partner} or {@code children} just means
+ * the person has none of them.
+ */
+final class PersonJsonDeserializer extends StdDeserializer<Person> {
+
+    PersonJsonDeserializer() {
+        super(Person.class);
+    }
+
+    @Override
+    public Person deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.isExpectedStartObjectToken()) {
+            return (Person) ctxt.handleUnexpectedToken(Person.class, p);
+        }
+
+        Integer id = null;
+        Integer partnerId = null;
+        Integer parent1 = null;
+        Integer parent2 = null;
+        String name = null;
+        LocalDate birthDate = null;
+        var children = new int[4];
+        var childCount = 0;
+
+        for (var field = p.nextFieldName(); field != null; field = p.nextFieldName()) {
+            final var token = p.nextToken();
+
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            switch (field) {
+                case "id" -> id = readId(p, ctxt);
+                case "name" -> name = readName(p, ctxt);
+                case "birthDate" -> birthDate = readDate(p, ctxt);
+                case "partner" -> partnerId = readReference(p, ctxt);
+                case "parent1" -> parent1 = readReference(p, ctxt);
+                case "parent2" -> parent2 = readReference(p, ctxt);
+                case "children" -> {
+                    if (token != JsonToken.START_ARRAY) {
+                        return (Person) ctxt.handleUnexpectedToken(Person.class, p);
+                    }
+
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        if (childCount == children.length) {
+                            children = Arrays.copyOf(children, childCount * 2);
+                        }
+
+                        children[childCount++] = readReference(p, ctxt);
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+
+        if (id == null) {
+            return ctxt.reportInputMismatch(Person.class, "a person needs an id");
+        }
+
+        final var parents = new int[2];
+        var parentCount = 0;
+
+        if (parent1 != null) {
+            parents[parentCount++] = parent1;
+        }
+
+        if (parent2 != null) {
+            parents[parentCount++] = parent2;
+        }
+
+        final var person = new Person(id);
+        person.setName(name);
+        person.setBirthDate(birthDate);
+        person.setPartnerId(partnerId);
+        person.setParentIds(IdSet.of(parents, parentCount));
+        person.setChildrenIds(IdSet.of(children, childCount));
+
+        return person;
+    }
+
+    /**
+     * The id of a {@code {"id": ...}} reference, other fields are ignored
+     */
+    private static int readReference(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            return (Integer) ctxt.handleUnexpectedToken(PersonReferenceDTO.class, p);
+        }
+
+        Integer id = null;
+
+        for (var field = p.nextFieldName(); field != null; field = p.nextFieldName()) {
+            p.nextToken();
+
+            if (field.equals("id") && p.currentToken() != JsonToken.VALUE_NULL) {
+                id = readId(p, ctxt);
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        if (id == null) {
+            return ctxt.reportInputMismatch(PersonReferenceDTO.class, "a reference needs an id");
+        }
+
+        return id;
+    }
+
+    /**
+     * Only a string, a number or object is rejected rather than turned into a name
+     */
+    private static String readName(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.VALUE_STRING) {
+            return (String) ctxt.handleUnexpectedToken(String.class, p);
+        }
+
+        return p.getText();
+    }
+
+    private static int readId(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.VALUE_NUMBER_INT) {
+            return (Integer) ctxt.handleUnexpectedToken(Integer.class, p);
+        }
+
+        return p.getIntValue();
+    }
+
+    /**
+     * ISO yyyy-MM-dd, read from the parser's character buffer without creating a string,
+     * or [year, month, day] as Jackson writes dates by default
+     */
+    private static LocalDate readDate(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.START_ARRAY) {
+            final var parts = new int[3];
+
+            for (int i = 0; i < parts.length; i++) {
+                if (p.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+                    return (LocalDate) ctxt.handleUnexpectedToken(LocalDate.class, p);
+                }
+
+                parts[i] = p.getIntValue();
+            }
+
+            if (p.nextToken() != JsonToken.END_ARRAY) {
+                return (LocalDate) ctxt.handleUnexpectedToken(LocalDate.class, p);
+            }
+
+            try {
+                return LocalDate.of(parts[0], parts[1], parts[2]);
+            } catch (DateTimeException e) {
+                return ctxt.reportInputMismatch(LocalDate.class, e.getMessage());
+            }
+        }
+
+        if (p.currentToken() == JsonToken.VALUE_STRING) {
+            final var chars = p.getTextCharacters();
+            final var offset = p.getTextOffset();
+
+            if (p.getTextLength() == 10 && chars[offset + 4] == '-' && chars[offset + 7] == '-') {
+                final var year = digits(chars, offset, 4);
+                final var month = digits(chars, offset + 5, 2);
+                final var day = digits(chars, offset + 8, 2);
+
+                if (year >= 0 && month >= 0 && day >= 0) {
+                    try {
+                        return LocalDate.of(year, month, day);
+                    } catch (DateTimeException e) {
+                        // Reported below like any other malformed date
+                    }
+                }
+            }
+        }
+
+        return (LocalDate) ctxt.handleWeirdStringValue(LocalDate.class, p.getText(), "expected a yyyy-MM-dd date");
+    }
+
+    /**
+     * @return the number, -1 when one of the characters is not a digit
+     */
+    private static int digits(char[] chars, int offset, int count) {
+        var value = 0;
+
+        for (int i = offset; i < offset + count; i++) {
+            if (chars[i] < '0' || chars[i] > '9') {
+                return -1;
+            }
+
+            value = value * 10 + chars[i] - '0';
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.tech_opdracht;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock striping over person ids
+ * A mutation locks the stripes of every id it touches, always in ascending stripe order so
+ * two mutations can never deadlock. Readers never take these locks.
+ */
+@Component
+public class PersonLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public PersonLocks(
+            @Value("${people.concurrency.mode:global}") ConcurrencyMode mode,
+            @Value("${people.concurrency.stripes:1024}") int stripes
+    ) {
+        final var size = mode == ConcurrencyMode.GLOBAL || stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public static PersonLocks global() {
+        return new PersonLocks(ConcurrencyMode.GLOBAL, 1);
+    }
+
+    public static PersonLocks striped(int stripes) {
+        return new PersonLocks(ConcurrencyMode.STRIPED, stripes);
+    }
+
+    /**
+     * Lock the stripes covering the given ids, released by closing the returned handle
+     */
+    public Held lock(Collection<Integer> ids) {
+        final var indexes = ids.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+
+        for (final var index : indexes) {
+            stripes[index].lock();
+        }
+
+        return new Held(indexes);
+    }
+
+    /**
+     * Lock every stripe, stops all writers
+     */
+    public Held lockAll() {
+        for (final var stripe : stripes) {
+            stripe.lock();
+        }
+
+        final var indexes = new int[stripes.length];
+        Arrays.setAll(indexes, i -> i);
+
+        return new Held(indexes);
+    }
+
+    private int stripeOf(Integer id) {
+        // Spread sequential ids over the stripes
+        return (id * 0x9E3779B9 >>> 16) & mask;
+    }
+
+    public final class Held implements AutoCloseable {
+        private final int[] indexes;
+
+        private Held(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        /**
+         * Whether every given id falls in a stripe held by this handle
+         */
+        public boolean covers(Collection<Integer> ids) {
+            for (final var id : ids) {
+                if (Arrays.binarySearch(indexes, stripeOf(id)) < 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void close() {
+            for (int i = indexes.length - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+}
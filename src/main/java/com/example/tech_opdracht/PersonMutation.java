@@ -0,0 +1,18 @@
+package com.example.tech_opdracht;
+
+/**
+ * A single write to the people graph, as it is applied and logged
+ */
+public sealed interface PersonMutation {
+
+    int id();
+
+    record Put(Person person) implements PersonMutation {
+        @Override
+        public int id() {
+            return person.getId();
+        }
+    }
+
+    record Delete(int id) implements PersonMutation {}
+}
@@ -0,0 +1,54 @@
+package com.example.tech_opdracht;
+
+/**
+ * One side of a relationship edge, applied to the person {@code id}
+ * Adding a relationship to someone who does not exist yet creates them as a placeholder.
+ *
+ * @param otherId the person on the other side of the edge
+ */
+public record RelationshipChange(int id, Kind kind, int otherId) {
+
+    public enum Kind {
+        SET_PARTNER,
+        CLEAR_PARTNER,
+        ADD_PARENT,
+        REMOVE_PARENT,
+        ADD_CHILD,
+        REMOVE_CHILD
+    }
+
+    /**
+     * Whether a missing person has to be created to apply this change
+     */
+    public boolean creates() {
+        return switch (kind) {
+            case SET_PARTNER, ADD_PARENT, ADD_CHILD -> true;
+            case CLEAR_PARTNER, REMOVE_PARENT, REMOVE_CHILD -> false;
+        };
+    }
+
+    /**
+     * Whether the person already reflects this change, so applying it would not change anything
+     */
+    public boolean isAppliedTo(Person person) {
+        return switch (kind) {
+            case SET_PARTNER -> person.hasPartner() && person.partnerId() == otherId;
+            case CLEAR_PARTNER -> !person.hasPartner();
+            case ADD_PARENT -> person.getParentIds().contains(otherId);
+            case REMOVE_PARENT -> !person.getParentIds().contains(otherId);
+            case ADD_CHILD -> person.getChildrenIds().contains(otherId);
+            case REMOVE_CHILD -> !person.getChildrenIds().contains(otherId);
+        };
+    }
+
+    public void applyTo(Person person) {
+        switch (kind) {
+            case SET_PARTNER -> person.setPartnerId(otherId);
+            case CLEAR_PARTNER -> person.setPartnerId(null);
+            case ADD_PARENT -> person.addParent(otherId);
+            case REMOVE_PARENT -> person.removeParent(otherId);
+            case ADD_CHILD -> person.addChild(otherId);
+            case REMOVE_CHILD -> person.removeChild(otherId);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.tech_opdracht;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * People owned by other instances, read before any lock is taken
+ * Code holding person locks only looks in here, so it never waits on another instance while other
+ * writers wait on it. A person that was not read in advance is a miss: the caller releases its locks,
+ * reads it and tries again, or evaluates later.
+ */
+final class RemoteReads {
+    /**
+     * Reads nothing, every person owned elsewhere looks absent without counting as a miss
+     */
+    static final RemoteReads LOCAL = new RemoteReads(null, Long.MAX_VALUE);
+
+    private final PeopleCluster cluster;
+    private final Map<Integer, Optional<Person>> read = new HashMap<>();
+    private long since;
+    private boolean missed;
+
+    /**
+     * @param since the change stamp when reading starts, later changes make these reads stale
+     */
+    RemoteReads(PeopleCluster cluster, long since) {
+        this.cluster = cluster;
+        this.since = since;
+    }
+
+    long since() {
+        return since;
+    }
+
+    /**
+     * Forget everything read so far, it was read before a change reported at {@code since}
+     */
+    void clear(long since) {
+        read.clear();
+        this.since = since;
+    }
+
+    /**
+     * Read through to the owner, only call while holding no lock
+     */
+    Optional<Person> fetch(int id) {
+        if (cluster == null) {
+            return Optional.empty();
+        }
+
+        return read.computeIfAbsent(id, cluster::get);
+    }
+
+    void fetchAll(Collection<Integer> ids) {
+        ids.forEach(this::fetch);
+    }
+
+    boolean hasAll(Collection<Integer> ids) {
+        return read.keySet().containsAll(ids);
+    }
+
+    /**
+     * What was read in advance, a person that was not looks absent and counts as a miss
+     * Safe to call from several threads once nothing is fetched anymore.
+     */
+    Optional<Person> cached(int id) {
+        if (cluster == null) {
+            return Optional.empty();
+        }
+
+        final var person = read.get(id);
+
+        if (person == null) {
+            missed = true;
+            return Optional.empty();
+        }
+
+        return person;
+    }
+
+    /**
+     * Whether a lookup missed since the last call
+     */
+    boolean missed() {
+        final var result = missed;
+        missed = false;
+
+        return result;
+    }
+}
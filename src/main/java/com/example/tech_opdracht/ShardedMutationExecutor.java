@@ -0,0 +1,96 @@
+package com.example.tech_opdracht;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Routes every mutation to the single-writer shard owning its family
+ * Families are the connected components of partner and parent/child edges, tracked in {@link FamilyComponents}.
+ * A mutation first merges the components of every id it touches, so its new relationships are
+ * part of the family before it is routed. When families merge, mutations already queued on the old
+ * shard may still run next to new ones on the other shard, the person locks keep those safe.
+ */
+public class ShardedMutationExecutor implements MutationExecutor, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ShardedMutationExecutor.class);
+
+    private final ExecutorService[] shards;
+    private final FamilyComponents components = new FamilyComponents();
+    private final ThreadLocal<Boolean> onShard = ThreadLocal.withInitial(() -> false);
+    private final PeopleRepository repository;
+    private final PersonLocks locks;
+
+    public ShardedMutationExecutor(int shards, PeopleRepository repository, PersonLocks locks) {
+        this.shards = new ExecutorService[shards];
+        this.repository = repository;
+        this.locks = locks;
+
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("people-shard-" + i).factory());
+        }
+    }
+
+    @Override
+    public <T> T execute(Collection<Integer> ids, Supplier<T> mutation) {
+        // A mutation started from a shard thread runs right there, waiting on another shard could deadlock
+        if (onShard.get()) {
+            return mutation.get();
+        }
+
+        final var root = components.union(ids);
+        final var shard = shards[Math.floorMod(root * 0x9E3779B9, shards.length)];
+
+        try {
+            return shard.submit(() -> {
+                onShard.set(true);
+                try {
+                    return mutation.get();
+                } finally {
+                    onShard.set(false);
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for shard", e);
+        }
+    }
+
+    @Override
+    public void deleted(int id) {
+        components.remove(id);
+    }
+
+    /**
+     * Split families that lost the relationships holding them together
+     * Blocks all writers while it runs.
+     */
+    @Scheduled(fixedDelayString = "${people.sharding.rebuild-interval-ms:600000}")
+    public void rebuildComponents() {
+        try (final var _ = locks.lockAll()) {
+            components.rebuild(repository.people());
+        }
+
+        log.info("Rebuilt family components, {} families over {} shards", components.componentCount(), shards.length);
+    }
+
+    @Override
+    public void close() {
+        for (final var shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.tech_opdracht;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Applies every mutation on one writer thread, fed through a bounded queue
+ * The writer drains whatever queued up into a batch, applies it, evaluates the union of everything
+ * the batch touched once, runs the group commit (a single write-ahead log sync) and only then completes
+ * the callers. Under bursts batches grow, so locking, evaluation and syncing are paid per batch rather
+ * than per request. A full queue blocks callers, which is the backpressure.
+ */
+public class SingleWriterMutationExecutor implements MutationExecutor, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SingleWriterMutationExecutor.class);
+
+    private final BlockingQueue<Task<?>> queue;
+    private final int maxBatch;
+    private final Runnable groupCommit;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * @param groupCommit runs once per batch after it is applied, before any caller returns
+     */
+    public SingleWriterMutationExecutor(int capacity, int maxBatch, Runnable groupCommit) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.groupCommit = groupCommit;
+        this.writer = Thread.ofPlatform().name("people-writer").start(this::drain);
+    }
+
+    @Override
+    public <T> T execute(Collection<Integer> ids, Supplier<T> mutation) {
+        if (Thread.currentThread() == writer) {
+            return mutation.get();
+        }
+
+        return submit(new Task<>(mutation, null));
+    }
+
+    @Override
+    public Set<Integer> execute(Collection<Integer> ids, Supplier<Set<Integer>> mutation, Supplier<Set<Integer>> deferred, Consumer<Set<Integer>> evaluation) {
+        if (Thread.currentThread() == writer) {
+            return mutation.get();
+        }
+
+        return submit(new Task<>(deferred, evaluation));
+    }
+
+    private <T> T submit(Task<T> task) {
+        try {
+            if (!running) {
+                throw new IllegalStateException("writer is stopped");
+            }
+
+            queue.put(task);
+            return task.result.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the writer", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private void drain() {
+        final var batch = new ArrayList<Task<?>>(maxBatch);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                // Polled rather than interrupted on close, an interrupt could land inside a mutation
+                final var first = queue.poll(100, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            queue.drainTo(batch, maxBatch - 1);
+            apply(batch);
+            batch.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void apply(List<Task<?>> batch) {
+        final var evaluations = new HashSet<Consumer<Set<Integer>>>();
+        final var affected = new HashSet<Integer>();
+
+        for (final var task : batch) {
+            try {
+                task.run();
+
+                if (task.evaluation != null) {
+                    evaluations.add(task.evaluation);
+                    affected.addAll((Set<Integer>) task.value);
+                }
+            } catch (RuntimeException | Error e) {
+                task.failure = e;
+            }
+        }
+
+        // Callers pass the same evaluation instance, so in practice this runs once
+        for (final var evaluation : evaluations) {
+            try {
+                evaluation.accept(affected);
+            } catch (RuntimeException e) {
+                // The mutations are applied either way, failing their callers would have them retry what is already done
+                log.error("Failed to evaluate {} people after a batch, the match indexes catch up on the next sweep", affected.size(), e);
+            }
+        }
+
+        try {
+            groupCommit.run();
+        } catch (RuntimeException | Error e) {
+            log.error("Failed to commit a batch of {} mutations", batch.size(), e);
+
+            // Not durable, so none of them may be reported as done
+            for (final var task : batch) {
+                task.failure = task.failure != null ? task.failure : e;
+            }
+        }
+
+        for (final var task : batch) {
+            task.complete();
+        }
+    }
+
+    /**
+     * Mutations waiting for the writer
+     */
+    int backlog() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Anything that slipped in after the writer stopped is refused rather than left waiting
+        for (Task<?> task; (task = queue.poll()) != null; ) {
+            task.result.completeExceptionally(new CancellationException("writer is stopped"));
+        }
+    }
+
+    private static final class Task<T> {
+        private final Supplier<T> mutation;
+        private final Consumer<Set<Integer>> evaluation;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private T value;
+        private Throwable failure;
+
+        Task(Supplier<T> mutation, Consumer<Set<Integer>> evaluation) {
+            this.mutation = mutation;
+            this.evaluation = evaluation;
+        }
+
+        void run() {
+            value = mutation.get();
+        }
+
+        void complete() {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(value);
+            }
+        }
+    }
+}
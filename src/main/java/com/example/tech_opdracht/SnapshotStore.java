@@ -0,0 +1,201 @@
+package com.example.tech_opdracht;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshots of the full people graph
+ * A snapshot records the first write-ahead log segment it does not cover, so recovery loads the
+ * latest snapshot and replays only the log from that segment on. It ends in a CRC32C of everything
+ * before it, and is on disk (file and directory entry) before older snapshots are deleted.
+ */
+public class SnapshotStore {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+    private static final int MAGIC = 0x50504c32; // "PPL2"
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Write a snapshot atomically and durably, then drop the older ones
+     * Once this returns the snapshot survives a power loss, so the log segments it covers can go.
+     */
+    public void write(long walSegment, Collection<Person> people) throws IOException {
+        Files.createDirectories(directory);
+
+        final var target = pathOf(walSegment);
+        final var temporary = directory.resolve(target.getFileName() + ".tmp");
+
+        try (final var file = new FileOutputStream(temporary.toFile())) {
+            final var checksum = new CRC32C();
+            final var out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, checksum), 1 << 16));
+
+            out.writeInt(MAGIC);
+            out.writeLong(walSegment);
+            out.writeInt(people.size());
+
+            for (final var person : people) {
+                PersonCodec.write(person, out);
+            }
+
+            out.flush();
+            // The trailer itself is not part of the checksum, written past the checked stream
+            new DataOutputStream(file).writeInt((int) checksum.getValue());
+            file.getFD().sync();
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        for (final var existing : snapshots()) {
+            if (existing < walSegment) {
+                Files.deleteIfExists(pathOf(existing));
+            }
+        }
+    }
+
+    /**
+     * Feed the people of the latest intact snapshot to the consumer
+     * A damaged snapshot is skipped for an older one, the consumer only sees a snapshot once it is verified.
+     *
+     * @return the first write-ahead log segment to replay, 0 without a snapshot
+     * @throws IOException when snapshots exist but none of them is intact
+     */
+    public long load(Consumer<Person> consumer) throws IOException {
+        final var existing = snapshots();
+        IOException damaged = null;
+
+        for (final var walSegment : existing.reversed()) {
+            final var people = new ArrayList<Person>();
+
+            try {
+                read(pathOf(walSegment), people);
+            } catch (IOException e) {
+                log.warn("Skipping damaged snapshot {}: {}", pathOf(walSegment), e.getMessage());
+                damaged = damaged == null ? e : damaged;
+                continue;
+            }
+
+            people.forEach(consumer);
+
+            return walSegment;
+        }
+
+        if (damaged != null) {
+            throw new IOException("No intact people snapshot in " + directory, damaged);
+        }
+
+        return 0;
+    }
+
+    private void read(Path path, List<Person> people) throws IOException {
+        verify(path);
+
+        try (final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a people snapshot");
+            }
+
+            in.readLong();
+            final var count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                people.add(PersonCodec.read(in));
+            }
+        }
+    }
+
+    /**
+     * Check the trailer against the rest of the file before anything is decoded,
+     * so no count or length from a damaged snapshot is ever trusted
+     */
+    private static void verify(Path path) throws IOException {
+        final var size = Files.size(path);
+
+        if (size < HEADER_BYTES + Integer.BYTES) {
+            throw new IOException("Truncated snapshot");
+        }
+
+        final var checksum = new CRC32C();
+
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var buffer = ByteBuffer.allocate(1 << 16);
+
+            for (var remaining = size - Integer.BYTES; remaining > 0; ) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Snapshot ended early");
+                }
+
+                buffer.flip();
+                remaining -= buffer.remaining();
+                checksum.update(buffer);
+            }
+
+            final var trailer = ByteBuffer.allocate(Integer.BYTES);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer) < 0) {
+                    throw new EOFException("Snapshot ended early");
+                }
+            }
+
+            if (trailer.getInt(0) != (int) checksum.getValue()) {
+                throw new IOException("Checksum mismatch");
+            }
+        }
+    }
+
+    /**
+     * Make the rename itself durable, not only the file's contents
+     */
+    private void syncDirectory() throws IOException {
+        try (final var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private List<Long> snapshots() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith("snapshot-") && name.endsWith(".bin"))
+                    .map(name -> Long.parseLong(name.substring(9, name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path pathOf(long walSegment) {
+        return directory.resolve("snapshot-%016d.bin".formatted(walSegment));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.tech_opdracht;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Incrementally works off the tombstones left by deletes, a bounded number per run
+ */
+@Component
+public class TombstoneCompactor {
+    private static final Logger log = LoggerFactory.getLogger(TombstoneCompactor.class);
+
+    private final PeopleService service;
+    private final PeopleRepository repository;
+    private final int batchSize;
+
+    public TombstoneCompactor(
+            PeopleService service,
+            PeopleRepository repository,
+            @Value("${people.compaction.batch-size:10000}") int batchSize
+    ) {
+        this.service = service;
+        this.repository = repository;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${people.compaction.interval-ms:1000}")
+    public void compact() {
+        final var processed = service.compactTombstones(batchSize);
+
+        if (processed > 0) {
+            log.info(
+                    "Compacted {} tombstones, {} remaining, {} people and ~{} bytes reclaimed in total",
+                    processed,
+                    repository.tombstoneCount(),
+                    repository.reclaimedPeople(),
+                    repository.reclaimedBytes()
+            );
+        }
+    }
+}
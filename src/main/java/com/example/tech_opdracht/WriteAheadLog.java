@@ -0,0 +1,290 @@
+package com.example.tech_opdracht;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of person mutations in fixed size, memory-mapped segment files
+ * Each record is {@code [length][crc][type][payload]}, a zero length marks the end of a segment.
+ * Appends only write to the mapping, {@link #sync()} flushes them to disk, so callers choose
+ * between syncing every append and group syncing on an interval.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean syncEveryAppend;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long segment;
+    /**
+     * Owns the mapping of the current segment, closing it unmaps the segment right away
+     */
+    private Arena arena;
+    private MemorySegment mapping;
+    private ByteBuffer buffer;
+    private boolean dirty;
+
+    public WriteAheadLog(
+            Path directory,
+            int segmentSize,
+            boolean syncEveryAppend
+    ) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncEveryAppend = syncEveryAppend;
+    }
+
+    /**
+     * Feed every complete record from segment {@code fromSegment} onwards to the consumer
+     * Reading a segment stops at its end marker or at the first torn record.
+     */
+    public void replay(long fromSegment, Consumer<PersonMutation> consumer) throws IOException {
+        for (final var index : segments()) {
+            if (index < fromSegment) {
+                continue;
+            }
+
+            try (final var channel = FileChannel.open(pathOf(index), StandardOpenOption.READ);
+                 final var replayArena = Arena.ofConfined()) {
+                final var segmentBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), replayArena).asByteBuffer();
+
+                while (segmentBuffer.remaining() >= HEADER_BYTES) {
+                    final var length = segmentBuffer.getInt();
+                    final var crc = segmentBuffer.getInt();
+
+                    if (length <= 0 || length > segmentBuffer.remaining()) {
+                        break;
+                    }
+
+                    final var payload = new byte[length];
+                    segmentBuffer.get(payload);
+
+                    if (checksum(payload) != crc) {
+                        break;
+                    }
+
+                    consumer.accept(decode(payload));
+                }
+            }
+        }
+    }
+
+    /**
+     * Start appending, always in a fresh segment after the existing ones
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+
+        final var existing = segments();
+        lock.lock();
+        try {
+            openSegment(existing.isEmpty() ? 0 : existing.getLast() + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(PersonMutation mutation) {
+        final var payload = encode(mutation);
+
+        if (payload.length + 2 * HEADER_BYTES > segmentSize) {
+            throw new IllegalArgumentException("Mutation of " + payload.length + " bytes does not fit in a WAL segment");
+        }
+
+        lock.lock();
+        try {
+            if (buffer == null) {
+                throw new IllegalStateException("Write-ahead log is not started");
+            }
+
+            // Keep room for the end marker
+            if (buffer.remaining() < payload.length + 2 * HEADER_BYTES) {
+                openSegment(segment + 1);
+            }
+
+            buffer.putInt(payload.length);
+            buffer.putInt(checksum(payload));
+            buffer.put(payload);
+            dirty = true;
+
+            if (syncEveryAppend) {
+                syncLocked();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush everything appended so far to disk
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            syncLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Continue in a new segment
+     *
+     * @return the index of the new segment, everything before it is in older segments
+     */
+    public long roll() throws IOException {
+        lock.lock();
+        try {
+            openSegment(segment + 1);
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop segments that are fully covered by a snapshot
+     * Only segments before the current one qualify, and those were unmapped when the log moved past them.
+     */
+    public void deleteSegmentsBefore(long index) throws IOException {
+        for (final var existing : segments()) {
+            if (existing < index) {
+                Files.deleteIfExists(pathOf(existing));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            syncLocked();
+            unmap();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        syncLocked();
+
+        final var next = Arena.ofShared();
+
+        try (final var channel = FileChannel.open(
+                pathOf(index),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            // The mapping stays valid after the channel is closed
+            final var nextMapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize, next);
+
+            // The previous segment is complete and synced, it is unmapped now rather than whenever it is collected
+            unmap();
+            arena = next;
+            mapping = nextMapping;
+            buffer = nextMapping.asByteBuffer();
+            segment = index;
+        } catch (IOException | RuntimeException e) {
+            next.close();
+            throw e;
+        }
+    }
+
+    private void unmap() {
+        if (arena != null) {
+            arena.close();
+            arena = null;
+            mapping = null;
+            buffer = null;
+        }
+    }
+
+    private void syncLocked() {
+        if (mapping != null && dirty) {
+            mapping.force();
+            dirty = false;
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith("wal-") && name.endsWith(".log"))
+                    .map(name -> Long.parseLong(name.substring(4, name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path pathOf(long index) {
+        return directory.resolve("wal-%016d.log".formatted(index));
+    }
+
+    private static int checksum(byte[] payload) {
+        final var crc = new CRC32C();
+        crc.update(payload);
+
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(PersonMutation mutation) {
+        final var bytes = new ByteArrayOutputStream(64);
+
+        try (final var out = new DataOutputStream(bytes)) {
+            switch (mutation) {
+                case PersonMutation.Put(var person) -> {
+                    out.writeByte(PUT);
+                    PersonCodec.write(person, out);
+                }
+                case PersonMutation.Delete(var id) -> {
+                    out.writeByte(DELETE);
+                    out.writeInt(id);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static PersonMutation decode(byte[] payload) throws IOException {
+        final var in = new DataInputStream(new ByteArrayInputStream(payload));
+        final var type = in.readByte();
+
+        return switch (type) {
+            case PUT -> new PersonMutation.Put(PersonCodec.read(in));
+            case DELETE -> new PersonMutation.Delete(in.readInt());
+            default -> throw new IOException("Unknown WAL record type " + type);
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.tech_opdracht;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FamilyComponentsTest {
+
+    @Test
+    void unionsAndRemovalsMatchPlainComponents() {
+        final var random = new Random(42);
+        final var components = new FamilyComponents();
+        // Removed people keep the links that ran through them, and are never merged again here
+        final var expected = new HashMap<Integer, Integer>();
+        final var live = new ArrayList<Integer>();
+        var next = 0;
+
+        for (int step = 0; step < 20_000; step++) {
+            if (random.nextInt(3) == 0 && !live.isEmpty()) {
+                final var id = live.remove(random.nextInt(live.size()));
+                components.remove(id);
+                continue;
+            }
+
+            final var family = new ArrayList<Integer>();
+            for (int i = 1 + random.nextInt(4); i > 0; i--) {
+                family.add(live.isEmpty() || random.nextInt(4) == 0 ? next++ : live.get(random.nextInt(live.size())));
+            }
+
+            components.union(family);
+
+            final var first = family.getFirst();
+            for (final var id : family) {
+                expected.putIfAbsent(id, id);
+                expected.putIfAbsent(first, first);
+                expected.put(find(expected, id), find(expected, first));
+
+                if (!live.contains(id)) {
+                    live.add(id);
+                }
+            }
+        }
+
+        final var representatives = new HashMap<Integer, Integer>();
+        for (final var id : live) {
+            final var root = components.union(List.of(id));
+            final var previous = representatives.putIfAbsent(find(expected, id), root);
+
+            assertTrue(previous == null || previous == root, "ids in one family share a representative");
+        }
+        assertEquals(representatives.size(), new HashSet<>(representatives.values()).size(), "separate families stay apart");
+        assertEquals(representatives.size(), components.componentCount());
+
+        for (final var id : List.copyOf(live)) {
+            components.remove(id);
+        }
+
+        assertEquals(0, components.size(), "removed people do not stay behind until a rebuild");
+        assertEquals(0, components.componentCount());
+    }
+
+    @Test
+    void removedPeopleStayAsLinksWhileOthersRunThroughThem() {
+        final var components = new FamilyComponents();
+
+        components.union(List.of(1, 2));
+        components.union(List.of(3, 4));
+        components.union(List.of(1, 3));
+        components.remove(3);
+
+        assertEquals(4, components.size(), "4 still links to 1 through 3");
+        assertEquals(components.union(List.of(1)), components.union(List.of(4)));
+        assertEquals(3, components.size(), "3 is dropped once the lookup moved 4 past it");
+
+        components.remove(4);
+        assertEquals(2, components.size());
+
+        components.remove(1);
+        components.remove(2);
+        assertEquals(0, components.size());
+    }
+
+    private static int find(Map<Integer, Integer> parents, int id) {
+        while (parents.get(id) != id) {
+            id = parents.get(id);
+        }
+
+        return id;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.tech_opdracht;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdSetTest {
+
+    @Test
+    void withAndWithoutMatchAHashSet() {
+        final var random = new Random(42);
+        var ids = IdSet.EMPTY;
+        final var expected = new HashSet<Integer>();
+
+        for (int step = 0; step < 10_000; step++) {
+            final var id = random.nextInt(8);
+
+            if (random.nextBoolean()) {
+                ids = ids.with(id);
+                expected.add(id);
+            } else {
+                ids = ids.without(id);
+                expected.remove(id);
+            }
+
+            assertEquals(expected.size(), ids.size(), "no duplicates are kept");
+            assertEquals(expected, ids);
+            assertEquals(ids, expected);
+            assertEquals(expected.hashCode(), ids.hashCode());
+        }
+    }
+
+    @Test
+    void unchangedSetsAreReturnedAsIs() {
+        final var ids = IdSet.of(Set.of(1, 2));
+
+        assertSame(ids, ids.with(2));
+        assertSame(ids, ids.without(3));
+        assertSame(IdSet.EMPTY, IdSet.single(1).without(1));
+    }
+
+    @Test
+    void ofDropsDuplicatesAndOnlyReadsTheGivenLength() {
+        final var buffer = new int[]{3, 1, 3, 2, 1, 7};
+
+        assertEquals(Set.of(1, 2, 3), IdSet.of(buffer, 5));
+        assertEquals(3, IdSet.of(buffer, 5).size());
+        assertEquals(Set.of(3), IdSet.of(buffer, 3).without(1));
+        assertSame(IdSet.EMPTY, IdSet.of(buffer, 0));
+
+        final var copied = IdSet.of(buffer, 2);
+        buffer[0] = 9;
+        assertEquals(Set.of(3, 1), copied, "the buffer is copied");
+    }
+
+    @Test
+    void singleIdSetsAreShared() {
+        assertSame(IdSet.single(5), IdSet.single(5));
+        assertSame(IdSet.single(6), IdSet.EMPTY.with(6));
+        assertSame(IdSet.single(7), IdSet.of(new int[]{7, 8}, 1));
+        assertEquals(IdSet.single(5), new HashSet<>(Set.of(5)));
+    }
+}
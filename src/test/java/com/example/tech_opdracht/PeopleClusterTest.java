@@ -0,0 +1,182 @@
+package com.example.tech_opdracht;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeopleClusterTest {
+
+    final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(30, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+
+    final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Test
+    void familySpreadOverTwoInstancesMatchesOnBoth() throws IOException {
+        final var ports = List.of(freePort(), freePort());
+        final var instances = start(ports);
+
+        try {
+            // Even ids are owned by the first instance, odd ids by the second, each is posted to the other one
+            send(ports.get(1), person(42, 3));
+            send(ports.get(0), person(3, 42));
+            send(ports.get(1), child(78));
+            send(ports.get(0), child(79));
+
+            for (final var port : ports) {
+                try (Response response = post(port, child(77))) {
+                    assertEquals(200, response.code(), "the family is complete on either instance");
+
+                    final var people = objectMapper.readValue(response.body().string(), new TypeReference<List<PersonDTO>>() {});
+                    assertEquals(List.of(3, 42), people.stream().map(PersonDTO::id).toList());
+                }
+            }
+
+            final var first = instances.get(0).getBean(PeopleRepository.class);
+            final var second = instances.get(1).getBean(PeopleRepository.class);
+
+            assertTrue(first.get(42).isPresent() && first.get(78).isPresent());
+            assertTrue(first.get(3).isEmpty() && first.get(77).isEmpty(), "only the owner stores a person");
+            assertEquals(Set.of(77, 78, 79), second.get(3).orElseThrow().getChildrenIds());
+        } finally {
+            instances.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    @Test
+    void concurrentWritesOnBothInstancesNeverWaitOnEachOther() throws Exception {
+        final var ports = List.of(freePort(), freePort());
+        final var instances = start(ports);
+        final var families = 40;
+
+        try (final var executor = Executors.newFixedThreadPool(16)) {
+            final var futures = new ArrayList<Future<Integer>>();
+
+            // Every family spans both instances, and its records are posted to both at the same time
+            for (int family = 0; family < families; family++) {
+                final var records = family(2000 + family * 10);
+
+                for (int i = 0; i < records.size(); i++) {
+                    final var port = ports.get((family + i) % ports.size());
+                    final var json = records.get(i);
+
+                    futures.add(executor.submit(() -> {
+                        try (Response response = post(port, json)) {
+                            return response.code();
+                        }
+                    }));
+                }
+            }
+
+            for (final var future : futures) {
+                final int code = future.get(60, TimeUnit.SECONDS);
+                assertTrue(code == 200 || code == 444, "unexpected " + code);
+            }
+
+            for (final var instance : instances) {
+                assertEquals(families * 2, instance.getBean(PeopleService.class).getMatchingPeople().size(), "every family matches");
+            }
+        } finally {
+            instances.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    private List<ConfigurableApplicationContext> start(List<Integer> ports) {
+        final var nodes = ports.stream().map(port -> "http://localhost:" + port).collect(Collectors.joining(","));
+        final var instances = new ArrayList<ConfigurableApplicationContext>();
+
+        for (int self = 0; self < ports.size(); self++) {
+            instances.add(new SpringApplicationBuilder(TechOpdrachtApplication.class).run(
+                    "--server.port=" + ports.get(self),
+                    "--people.cluster.nodes=" + nodes,
+                    "--people.cluster.self=" + self,
+                    "--logging.level.root=warn"));
+        }
+
+        return instances;
+    }
+
+    private void send(int port, String json) throws IOException {
+        try (Response response = post(port, json)) {
+            assertTrue(response.code() == 200 || response.code() == 444, "unexpected " + response.code());
+        }
+    }
+
+    private Response post(int port, String json) throws IOException {
+        final var request = new Request.Builder()
+                .url("http://localhost:" + port + "/api/v1/people")
+                .post(RequestBody.create(json, MediaType.get("application/json")))
+                .build();
+
+        return client.newCall(request).execute();
+    }
+
+    private static String person(int id, int partnerId) {
+        return """
+                {"id": %d, "name": "parent", "birthDate": "1814-12-10", "partner": {"id": %d},
+                 "parent1": {"id": 1001}, "parent2": {"id": 1002},
+                 "children": [{"id": 77}, {"id": 78}, {"id": 79}]}
+                """.formatted(id, partnerId);
+    }
+
+    private static String child(int id) {
+        return """
+                {"id": %d, "name": "child", "birthDate": "2025-01-01",
+                 "parent1": {"id": 42}, "parent2": {"id": 3}, "children": []}
+                """.formatted(id);
+    }
+
+    /**
+     * Two partners and three minor children, ids alternate between the instances
+     */
+    private static List<String> family(int base) {
+        final var records = new ArrayList<String>();
+
+        for (final var parent : List.of(base + 1, base + 2)) {
+            records.add("""
+                    {"id": %d, "name": "parent", "birthDate": "1980-01-01", "partner": {"id": %d},
+                     "children": [{"id": %d}, {"id": %d}, {"id": %d}]}
+                    """.formatted(parent, parent == base + 1 ? base + 2 : base + 1, base + 3, base + 4, base + 5));
+        }
+
+        for (final var child : List.of(base + 3, base + 4, base + 5)) {
+            records.add("""
+                    {"id": %d, "name": "child", "birthDate": "2020-01-01",
+                     "parent1": {"id": %d}, "parent2": {"id": %d}}
+                    """.formatted(child, base + 1, base + 2));
+        }
+
+        return records;
+    }
+
+    private static int freePort() throws IOException {
+        try (final var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
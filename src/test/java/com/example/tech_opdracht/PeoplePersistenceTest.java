@@ -0,0 +1,171 @@
+package com.example.tech_opdracht;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeoplePersistenceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restartRecoversFromSnapshotAndLogTail() throws IOException {
+        final var first = start();
+        first.service.addOrUpdatePerson(parent(1, 2));
+        first.service.addOrUpdatePerson(parent(2, 1));
+        first.persistence.snapshot();
+
+        // Only in the log after the snapshot
+        for (final var childId : Set.of(3, 4, 5)) {
+            first.service.addOrUpdatePerson(child(childId));
+        }
+        first.persistence.close();
+
+        final var second = start();
+
+        assertEquals(5, second.repository.size());
+        assertEquals(2, second.service.getMatchingPeople().size(), "family should match after restart");
+    }
+
+    @Test
+    void deletesAreReplayed() throws IOException {
+        final var first = start();
+        first.service.addOrUpdatePerson(parent(1, 2));
+        first.service.addOrUpdatePerson(parent(2, 1));
+        for (final var childId : Set.of(3, 4, 5)) {
+            first.service.addOrUpdatePerson(child(childId));
+        }
+        first.service.deletePerson(new Person(5));
+        first.persistence.close();
+
+        final var second = start();
+
+        assertTrue(second.repository.get(5).isEmpty());
+        assertEquals(0, second.service.getMatchingPeople().size());
+    }
+
+    @Test
+    void damagedSnapshotsAreDetectedAndSkipped() throws IOException {
+        final var store = new SnapshotStore(directory);
+        final var older = directory.resolve("snapshot-%016d.bin".formatted(1));
+        final var latest = directory.resolve("snapshot-%016d.bin".formatted(3));
+
+        store.write(1, List.of(parent(1, 2)));
+        final var intact = Files.readAllBytes(older);
+        store.write(3, List.of(parent(1, 2), parent(2, 1)));
+        assertFalse(Files.exists(older), "older snapshots are dropped once the new one is on disk");
+
+        // As if the newer one was damaged on disk after the older one had been kept
+        Files.write(older, intact);
+        final var bytes = Files.readAllBytes(latest);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(latest, bytes);
+
+        final var loaded = new ArrayList<Person>();
+        assertEquals(1, store.load(loaded::add));
+        assertEquals(List.of(1), loaded.stream().map(Person::getId).toList());
+
+        Files.delete(older);
+        assertThrows(IOException.class, () -> store.load(loaded::add));
+    }
+
+    @Test
+    void damagedCountsAreCaughtBeforeAnythingIsAllocated() throws IOException {
+        final var store = new SnapshotStore(directory);
+        final var older = directory.resolve("snapshot-%016d.bin".formatted(1));
+        final var latest = directory.resolve("snapshot-%016d.bin".formatted(3));
+
+        store.write(1, List.of(parent(1, 2)));
+        final var intact = Files.readAllBytes(older);
+        store.write(3, List.of(parent(1, 2)));
+        Files.write(older, intact);
+
+        // The children count of the last person, before its three ids and the trailer
+        final var bytes = Files.readAllBytes(latest);
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 4 - 3 * 4 - 4, Integer.MAX_VALUE - 8);
+        Files.write(latest, bytes);
+
+        final var loaded = new ArrayList<Person>();
+        assertEquals(1, store.load(loaded::add), "falls back to the older snapshot");
+        assertEquals(List.of(1), loaded.stream().map(Person::getId).toList());
+    }
+
+    @Test
+    void namesOver64KbSurviveTheLogAndSnapshots() throws IOException {
+        // Over 64 KB once encoded, too long for writeUTF
+        final var name = "\u20ac".repeat(25_000);
+
+        final var first = start(1 << 20);
+        for (int id = 1; id <= 20; id++) {
+            final var person = new Person(id);
+            person.setName(name + id);
+            first.service.addOrUpdatePerson(person);
+
+            // Taken once the log has moved past its first segment, which is then dropped
+            if (id == 15) {
+                first.persistence.snapshot();
+            }
+        }
+        first.persistence.close();
+
+        final var second = start(1 << 20);
+
+        assertEquals(20, second.repository.size());
+        assertEquals(name + 1, second.repository.get(1).orElseThrow().getName());
+        assertEquals(name + 20, second.repository.get(20).orElseThrow().getName());
+    }
+
+    private Instance start() throws IOException {
+        return start(1 << 16);
+    }
+
+    private Instance start(int segmentSize) throws IOException {
+        final var repository = new PeopleRepository();
+        final var locks = PersonLocks.global();
+        final var wal = new WriteAheadLog(directory, segmentSize, false);
+        final var service = new PeopleService(repository, locks, Clock.systemDefaultZone(), wal::append, PeopleMetrics.none());
+        final var persistence = new PeoplePersistence(wal, directory, service, repository, locks, 10);
+
+        persistence.recover();
+
+        return new Instance(repository, service, persistence);
+    }
+
+    private static Person parent(int id, int partnerId) {
+        final var person = new Person(id);
+        person.setName("parent " + id);
+        person.setBirthDate(LocalDate.of(1980, 1, 1));
+        person.setPartnerId(partnerId);
+        person.setChildrenIds(Set.of(3, 4, 5));
+
+        return person;
+    }
+
+    private static Person child(int id) {
+        final var person = new Person(id);
+        person.setName("child " + id);
+        person.setBirthDate(LocalDate.now().minus(1, ChronoUnit.YEARS));
+        person.setParentIds(Set.of(1, 2));
+
+        return person;
+    }
+
+    private record Instance(
+            PeopleRepository repository,
+            PeopleService service,
+            PeoplePersistence persistence
+    ) {}
+}
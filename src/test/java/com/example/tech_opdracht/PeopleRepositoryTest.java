@@ -0,0 +1,107 @@
+package com.example.tech_opdracht;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeopleRepositoryTest {
+
+    @Test
+    void snapshotKeepsSeeingTheVersionItWasTakenAt() {
+        final var repository = new PeopleRepository();
+
+        try (final var write = repository.beginWrite()) {
+            final var person = new Person(1);
+            person.setName("before");
+            write.put(person);
+        }
+
+        try (final var snapshot = repository.snapshot()) {
+            try (final var write = repository.beginWrite()) {
+                write.edit(1).orElseThrow().setName("after");
+                write.delete(1);
+            }
+
+            try (final var write = repository.beginWrite()) {
+                write.put(new Person(2));
+            }
+
+            assertEquals("before", snapshot.get(1).orElseThrow().getName());
+            assertTrue(snapshot.get(2).isEmpty(), "created after the snapshot");
+            assertEquals(1, snapshot.people().size());
+        }
+
+        assertTrue(repository.get(1).isEmpty());
+        assertTrue(repository.get(2).isPresent());
+    }
+
+    @Test
+    void uncommittedWritesAreInvisibleToReaders() {
+        final var repository = new PeopleRepository();
+
+        try (final var write = repository.beginWrite()) {
+            write.put(new Person(1));
+
+            assertTrue(write.get(1).isPresent(), "a write sees its own changes");
+            assertTrue(repository.get(1).isEmpty(), "readers only see committed writes");
+        }
+
+        assertTrue(repository.get(1).isPresent());
+    }
+
+    @Test
+    void tombstonesArePurgedOnlyOnceNoSnapshotCanSeeThePerson() {
+        final var repository = new PeopleRepository();
+
+        try (final var write = repository.beginWrite()) {
+            write.put(new Person(1));
+        }
+
+        try (final var snapshot = repository.snapshot()) {
+            try (final var write = repository.beginWrite()) {
+                write.delete(1);
+            }
+
+            assertTrue(repository.pollTombstone().isEmpty(), "snapshot still sees the person");
+            assertTrue(snapshot.get(1).isPresent());
+        }
+
+        assertTrue(repository.pollTombstone().isPresent());
+        assertEquals(0, repository.size());
+    }
+
+    @Test
+    void candidatesFollowChildCountAndPartnerOfTheNewestVersions() {
+        final var repository = new PeopleRepository();
+
+        try (final var write = repository.beginWrite()) {
+            final var parent = new Person(1);
+            parent.setPartnerId(2);
+            write.put(parent);
+            write.put(new Person(2));
+        }
+
+        assertEquals(Set.of(1), repository.candidates(true, 0, 0).orElseThrow());
+
+        try (final var write = repository.beginWrite()) {
+            // Changed after it was installed by the write
+            final var parent = write.edit(1).orElseThrow();
+            parent.addChild(3);
+            parent.addChild(4);
+        }
+
+        assertEquals(Set.of(), repository.candidates(true, 0, 0).orElseThrow());
+        assertEquals(Set.of(1), repository.candidates(true, 2, 2).orElseThrow());
+        assertEquals(Set.of(1), repository.candidates(null, 1, Integer.MAX_VALUE).orElseThrow());
+        assertEquals(Set.of(), repository.candidates(false, 1, Integer.MAX_VALUE).orElseThrow());
+        assertTrue(repository.candidates(false, 0, 3).isEmpty(), "people without partner and children are not indexed");
+
+        try (final var write = repository.beginWrite()) {
+            write.delete(1);
+        }
+
+        assertEquals(Set.of(), repository.candidates(null, 1, Integer.MAX_VALUE).orElseThrow());
+    }
+}
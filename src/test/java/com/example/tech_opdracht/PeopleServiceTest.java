@@ -2,9 +2,21 @@ package com.example.tech_opdracht;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static java.time.LocalDate.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -306,4 +318,484 @@ class PeopleServiceTest {
 
         assertEquals(2, result.size(), "should once again be known");
     }
-}
\ No newline at end of file
+
+    @Test
+    void removingPartnerLeadsToCriteriaFailingForBothParents() {
+        final var service = new PeopleService(new PeopleRepository());
+
+        Person parent1 = new Person(parentId1);
+        parent1.setPartnerId(parentId2);
+        parent1.setChildrenIds(Set.of(childId1, childId2, childId3));
+
+        Person parent2 = new Person(parentId2);
+        parent2.setPartnerId(parentId1);
+        parent2.setBirthDate(of(1980, 1, 1));
+        parent2.setChildrenIds(Set.of(childId1, childId2, childId3));
+
+        Person child1 = new Person(childId1);
+        child1.setBirthDate(of(2010, 1, 1));
+        child1.setParentIds(Set.of(parentId1, parentId2));
+
+        Person child2 = new Person(childId2);
+        child2.setBirthDate(of(2005, 1, 1));
+        child2.setParentIds(Set.of(parentId1, parentId2));
+
+        Person youngest = new Person(childId3);
+        youngest.setBirthDate(LocalDate.now().minus(1, ChronoUnit.YEARS));
+        youngest.setParentIds(Set.of(parentId1, parentId2));
+
+        service.addOrUpdatePerson(parent1);
+        service.addOrUpdatePerson(parent2);
+        service.addOrUpdatePerson(child1);
+        service.addOrUpdatePerson(child2);
+        service.addOrUpdatePerson(youngest);
+        assertEquals(2, service.getMatchingPeople().size());
+
+        Person withoutPartner = new Person(parentId1);
+        withoutPartner.setChildrenIds(Set.of(childId1, childId2, childId3));
+        service.addOrUpdatePerson(withoutPartner);
+        final var result = service.getMatchingPeople();
+
+        assertEquals(0, result.size(), "partner was removed from both sides");
+    }
+
+    @Test
+    void concurrentUpdatesOfSeparateFamiliesWithStripedLocks() throws Exception {
+        final var service = new PeopleService(new PeopleRepository(), PersonLocks.striped(64), Clock.systemDefaultZone(), MutationLog.NONE, PeopleMetrics.none());
+        final var families = 200;
+
+        try (final var executor = Executors.newFixedThreadPool(8)) {
+            final var futures = new ArrayList<Future<?>>();
+
+            for (int family = 0; family < families; family++) {
+                final var base = family * 10;
+                futures.add(executor.submit(() -> family(base).forEach(service::addOrUpdatePerson)));
+            }
+
+            for (final var future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(families * 2, service.getMatchingPeople().size(), "every family should match");
+    }
+
+    @Test
+    void concurrentUpdatesOfMergingFamiliesWithShards() throws Exception {
+        final var repository = new PeopleRepository();
+        final var locks = PersonLocks.striped(64);
+        final var families = 200;
+
+        try (final var shards = new ShardedMutationExecutor(4, repository, locks);
+             final var executor = Executors.newFixedThreadPool(8)) {
+            final var service = new PeopleService(repository, locks, Clock.systemDefaultZone(), MutationLog.NONE, PeopleMetrics.none(), shards);
+            final var futures = new ArrayList<Future<?>>();
+
+            for (int family = 0; family < families; family++) {
+                final var base = family * 10;
+                futures.add(executor.submit(() -> family(base).forEach(service::addOrUpdatePerson)));
+            }
+
+            for (final var future : futures) {
+                future.get();
+            }
+
+            // Every family's first child partners with the next family's, merging all families into one
+            for (int family = 0; family < families; family++) {
+                final var base = family * 10;
+                final var next = (family + 1) % families * 10;
+
+                futures.add(executor.submit(() -> {
+                    Person child = new Person(base + 3);
+                    child.setBirthDate(LocalDate.now().minus(1, ChronoUnit.YEARS));
+                    child.setParentIds(Set.of(base + 1, base + 2));
+                    child.setPartnerId(next + 3);
+                    service.addOrUpdatePerson(child);
+                }));
+            }
+
+            for (final var future : futures) {
+                future.get();
+            }
+
+            assertEquals(families * 2, service.getMatchingPeople().size(), "every family should still match");
+
+            family(0).forEach(service::addOrUpdatePerson);
+            shards.rebuildComponents();
+
+            assertEquals(families * 2, service.getMatchingPeople().size());
+        }
+    }
+
+    @Test
+    void concurrentUpdatesThroughASingleWriterAreCommittedPerBatch() throws Exception {
+        final var families = 200;
+        final var logged = new AtomicInteger();
+        final var commits = new AtomicInteger();
+
+        try (final var writer = new SingleWriterMutationExecutor(64, 32, commits::incrementAndGet);
+             final var executor = Executors.newFixedThreadPool(8)) {
+            final var service = new PeopleService(new PeopleRepository(), PersonLocks.striped(64), Clock.systemDefaultZone(),
+                    _ -> logged.incrementAndGet(), PeopleMetrics.none(), writer);
+            final var futures = new ArrayList<Future<?>>();
+
+            for (int family = 0; family < families; family++) {
+                final var base = family * 10;
+                futures.add(executor.submit(() -> family(base).forEach(service::addOrUpdatePerson)));
+            }
+
+            for (final var future : futures) {
+                future.get();
+            }
+
+            assertEquals(families * 2, service.getMatchingPeople().size(), "every family should match");
+            assertEquals(families * 5, logged.get());
+            assertTrue(commits.get() <= logged.get(), "at most one group commit per mutation");
+
+            // Seen by the caller as soon as it returns, the batch was evaluated before completing it
+            Person single = family(0).getFirst();
+            single.setPartnerId(null);
+            service.addOrUpdatePerson(single);
+            assertFalse(service.getMatchingPeople().stream().anyMatch(person -> person.getId() == 1));
+        }
+    }
+
+    @Test
+    void mutationsQueuedBehindTheWriterShareOneGroupCommit() throws Exception {
+        final var commits = new AtomicInteger();
+        final var evaluated = new ArrayList<Set<Integer>>();
+        final var started = new CountDownLatch(1);
+        final var release = new Semaphore(0);
+
+        try (final var writer = new SingleWriterMutationExecutor(64, 32, commits::incrementAndGet);
+             final var executor = Executors.newFixedThreadPool(5)) {
+            final var blocking = executor.submit(() -> writer.execute(List.of(), () -> {
+                started.countDown();
+                release.acquireUninterruptibly();
+                return null;
+            }));
+            started.await();
+
+            final var queued = new ArrayList<Future<Set<Integer>>>();
+            // One instance, as the service passes
+            final Consumer<Set<Integer>> evaluation = evaluated::add;
+            for (int i = 0; i < 4; i++) {
+                final var id = i;
+                queued.add(executor.submit(() -> writer.execute(List.of(id), () -> Set.of(id), () -> Set.of(id), evaluation)));
+            }
+
+            while (writer.backlog() < 4) {
+                Thread.onSpinWait();
+            }
+            release.release();
+
+            blocking.get();
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Set.of(i), queued.get(i).get());
+            }
+
+            assertEquals(2, commits.get(), "one commit for the blocking mutation, one for everything queued behind it");
+            assertEquals(List.of(Set.of(0, 1, 2, 3)), evaluated, "the batch is evaluated once");
+        }
+    }
+
+    @Test
+    void onlyAFailedGroupCommitFailsTheCallers() {
+        final var commitFails = new AtomicBoolean();
+
+        try (final var writer = new SingleWriterMutationExecutor(64, 32, () -> {
+            if (commitFails.get()) {
+                throw new IllegalStateException("sync failed");
+            }
+        })) {
+            // Applied either way, the indexes are left to catch up
+            assertEquals(Set.of(1), writer.execute(List.of(1), () -> Set.of(1), () -> Set.of(1), _ -> {
+                throw new IllegalStateException("evaluation failed");
+            }));
+
+            commitFails.set(true);
+            assertThrows(IllegalStateException.class, () -> writer.execute(List.of(2), () -> Set.of(2), () -> Set.of(2), _ -> {}));
+        }
+    }
+
+    @Test
+    void compactionReclaimsRelativesOnlyKeptAliveByADeletedPerson() {
+        final var repository = new PeopleRepository();
+        final var service = new PeopleService(repository);
+
+        Person person = new Person(parentId1);
+        person.setName("person");
+        person.setPartnerId(parentId2);
+        person.setChildrenIds(Set.of(childId1));
+
+        Person child = new Person(childId1);
+        child.setName("child");
+        child.setParentIds(Set.of(parentId1, parentId3));
+
+        service.addOrUpdatePerson(person);
+        service.addOrUpdatePerson(child);
+        service.deletePerson(person);
+
+        assertTrue(repository.get(parentId1).isEmpty(), "deleted person should be gone right away");
+        assertEquals(1, repository.tombstoneCount());
+
+        assertEquals(2, service.compactTombstones(100), "the deleted person and its reclaimed partner");
+
+        assertEquals(0, repository.tombstoneCount());
+        assertTrue(repository.get(parentId2).isEmpty(), "placeholder partner should be reclaimed");
+        assertTrue(repository.get(childId1).isPresent(), "child still has data");
+        assertTrue(repository.get(parentId3).isPresent(), "other parent is still referenced");
+        assertEquals(2, repository.reclaimedPeople());
+        assertTrue(repository.reclaimedBytes() > 0);
+    }
+
+    @Test
+    void compactionKeepsPostedRecordsWithoutData() {
+        final var repository = new PeopleRepository();
+        final var service = new PeopleService(repository);
+
+        // Posted with nothing but an id, it looks like a placeholder once its partner is gone
+        service.addOrUpdatePerson(new Person(parentId2));
+
+        Person person = new Person(parentId1);
+        person.setName("person");
+        person.setPartnerId(parentId2);
+
+        service.addOrUpdatePerson(person);
+        service.deletePerson(person);
+
+        assertEquals(1, service.compactTombstones(100));
+
+        assertTrue(repository.get(parentId2).isPresent(), "posted record should survive compaction");
+        assertEquals(1, repository.reclaimedPeople(), "only the deleted person");
+    }
+
+    @Test
+    void placeholdersAreCountedAndPromotedByARealRecord() {
+        final var repository = new PeopleRepository();
+        final var service = new PeopleService(repository);
+
+        Person child = new Person(3);
+        child.setBirthDate(now().minusYears(5));
+        child.setParentIds(Set.of(1, 2));
+        service.addOrUpdatePerson(child);
+
+        final var parent1 = repository.get(1).orElseThrow();
+        final var parent2 = repository.get(2).orElseThrow();
+        assertTrue(parent1.isPlaceholder());
+        assertSame(parent1.getChildrenIds(), parent2.getChildrenIds(), "both parents share the set holding their only child");
+        assertEquals(2, repository.placeholderCount());
+        assertTrue(repository.placeholderBytes() > 0);
+
+        // Same content as the placeholder, still a real record
+        Person real = new Person(1);
+        real.setChildrenIds(Set.of(3));
+        service.addOrUpdatePerson(real);
+
+        assertFalse(repository.get(1).orElseThrow().isPlaceholder());
+        assertEquals(1, repository.placeholderCount());
+
+        service.deletePerson(new Person(2));
+        assertEquals(0, repository.placeholderCount());
+        assertEquals(0, repository.placeholderBytes());
+    }
+
+    @Test
+    void lastMinorTurningEighteenLeadsToCriteriaFailing() {
+        final var today = of(2030, 6, 15);
+        final var clock = Clock.fixed(today.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        final var service = new PeopleService(new PeopleRepository(), PersonLocks.global(), clock, MutationLog.NONE, PeopleMetrics.none());
+
+        for (final var person : family(0)) {
+            if (!person.getParentIds().isEmpty()) {
+                person.setBirthDate(today.minusYears(18).plusDays(1));
+            }
+
+            service.addOrUpdatePerson(person);
+        }
+
+        assertEquals(2, service.getMatchingPeople().size());
+
+        service.advanceToday(today);
+        assertEquals(2, service.getMatchingPeople().size(), "children are still 17 today");
+
+        service.advanceToday(today.plusDays(1));
+        assertEquals(0, service.getMatchingPeople().size(), "youngest child turned 18");
+    }
+
+    @Test
+    void matchVersionOnlyMovesWhenTheMatchListChanges() {
+        final var service = new PeopleService(new PeopleRepository());
+
+        family(0).forEach(service::addOrUpdatePerson);
+        final var version = service.matchSummary().version();
+
+        Person stranger = new Person(100);
+        stranger.setName("stranger");
+        service.addOrUpdatePerson(stranger);
+        assertEquals(version, service.matchSummary().version(), "unrelated write");
+
+        Person child = new Person(3);
+        child.setName("renamed");
+        child.setBirthDate(now().minusYears(5));
+        child.setParentIds(Set.of(1, 2));
+        service.addOrUpdatePerson(child);
+        assertTrue(service.matchSummary().version() > version, "the child of a match changed");
+    }
+
+    @Test
+    void updatesOnlyTouchTheRelationshipsThatChanged() {
+        final var repository = new PeopleRepository();
+        final var logged = new ArrayList<PersonMutation>();
+        final var service = new PeopleService(repository, PersonLocks.global(), Clock.systemDefaultZone(), logged::add, PeopleMetrics.none());
+
+        family(0).forEach(service::addOrUpdatePerson);
+        final var writes = logged.size();
+        final var relatives = List.of(2, 3, 4, 5);
+        final var versions = relatives.stream().map(id -> repository.get(id).orElseThrow().version()).toList();
+
+        service.addOrUpdatePerson(family(0).getFirst());
+        assertEquals(writes, logged.size(), "an identical re-send is skipped entirely");
+
+        Person renamed = family(0).getFirst();
+        renamed.setName("renamed");
+        service.addOrUpdatePerson(renamed);
+        assertEquals(writes + 1, logged.size());
+        assertEquals(versions, relatives.stream().map(id -> repository.get(id).orElseThrow().version()).toList(), "no relationship changed");
+
+        Person withoutChild = family(0).getFirst();
+        withoutChild.setName("renamed");
+        withoutChild.setChildrenIds(Set.of(3, 4));
+        service.addOrUpdatePerson(withoutChild);
+        final var changed = relatives.stream().filter(id -> repository.get(id).orElseThrow().version() != versions.get(relatives.indexOf(id))).toList();
+        assertEquals(List.of(5), changed, "only the removed child lost its parent");
+        assertEquals(Set.of(2), repository.get(5).orElseThrow().getParentIds());
+    }
+
+    @Test
+    void parallelRebuildAndSweepAgreeWithTheIndex() {
+        final var repository = new PeopleRepository();
+
+        try (final var evaluator = new ParallelEvaluator(4)) {
+            final var service = new PeopleService(repository, PersonLocks.global(), Clock.systemDefaultZone(), MutationLog.NONE,
+                    PeopleMetrics.none(), MutationExecutor.DIRECT, PeopleCluster.SINGLE, evaluator);
+
+            // More than one chunk, so the pass is actually split
+            for (int base = 0; base < 2 * ParallelEvaluator.CHUNK_SIZE * 5; base += 10) {
+                family(base).forEach(service::addOrUpdatePerson);
+            }
+
+            final var matching = ids(service.matchingPeople(null));
+            service.rebuild();
+            assertEquals(matching, ids(service.matchingPeople(null)), "a rebuild finds the same matches");
+            assertEquals(0, service.sweep(), "nothing to repair");
+
+            // Changed behind the service's back, as if an evaluation had been lost
+            try (final var write = repository.beginWrite()) {
+                for (final var childId : List.of(3, 4, 5)) {
+                    write.edit(childId).orElseThrow().setBirthDate(now().minusYears(30));
+                }
+            }
+
+            assertEquals(2, service.sweep(), "both parents disagree with the index");
+            assertFalse(ids(service.matchingPeople(null)).contains(1));
+            assertEquals(matching.size() - 2, service.matchCount());
+        }
+    }
+
+    @Test
+    void registeredPatternsAreEvaluatedNextToTheDefault() {
+        final var service = new PeopleService(new PeopleRepository());
+
+        family(0).forEach(service::addOrUpdatePerson);
+
+        Person single = new Person(100);
+        single.setChildrenIds(Set.of(101, 102));
+        service.addOrUpdatePerson(single);
+
+        for (final var childId : List.of(101, 102)) {
+            Person child = new Person(childId);
+            child.setBirthDate(now().minusYears(10));
+            child.setParentIds(Set.of(100));
+            service.addOrUpdatePerson(child);
+        }
+
+        service.registerPattern(new PatternDefinition("single-parent", PatternDefinition.PartnerRule.ABSENT, 1, null, false, 18, 1));
+        service.registerPattern(new PatternDefinition("large-family", PatternDefinition.PartnerRule.REQUIRED, 4, null, true, 18, 1));
+
+        assertEquals(List.of(100), ids(service.matchingPeople("single-parent", null).orElseThrow()));
+        assertEquals(List.of(), ids(service.matchingPeople("large-family", null).orElseThrow()));
+        assertEquals(List.of(1, 2), ids(service.matchingPeople(null)), "the default pattern is unchanged");
+
+        Person fourthChild = new Person(6);
+        fourthChild.setBirthDate(now().minusYears(3));
+        fourthChild.setParentIds(Set.of(1, 2));
+        service.addOrUpdatePerson(fourthChild);
+
+        assertEquals(List.of(1, 2), ids(service.matchingPeople("large-family", null).orElseThrow()));
+        assertEquals(List.of(), ids(service.matchingPeople(null)), "four children no longer fit the default pattern");
+
+        assertTrue(service.removePattern("large-family"));
+        assertTrue(service.matchingPeople("large-family", null).isEmpty());
+    }
+
+    @Test
+    void patternsWithAnotherMinorAgeFollowTheDay() {
+        final var today = of(2030, 6, 15);
+        final var clock = Clock.fixed(today.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        final var service = new PeopleService(new PeopleRepository(), PersonLocks.global(), clock, MutationLog.NONE, PeopleMetrics.none());
+
+        for (final var person : family(0)) {
+            if (!person.getParentIds().isEmpty()) {
+                person.setBirthDate(today.minusYears(12).plusDays(1));
+            }
+
+            service.addOrUpdatePerson(person);
+        }
+
+        service.registerPattern(new PatternDefinition("young-family", PatternDefinition.PartnerRule.REQUIRED, 3, 3, true, 12, 1));
+        assertEquals(List.of(1, 2), ids(service.matchingPeople("young-family", null).orElseThrow()));
+
+        service.advanceToday(today.plusDays(1));
+        assertEquals(List.of(), ids(service.matchingPeople("young-family", null).orElseThrow()), "youngest child turned 12");
+        assertEquals(2, service.matchCount(), "still under 18");
+    }
+
+    @Test
+    void invalidPatternsAreRejected() {
+        final var service = new PeopleService(new PeopleRepository());
+
+        assertThrows(IllegalArgumentException.class, () -> service.registerPattern(
+                new PatternDefinition("shared-partner-without-partner", PatternDefinition.PartnerRule.ABSENT, 1, null, true, 18, 0)));
+        assertThrows(IllegalArgumentException.class, () -> service.registerPattern(
+                new PatternDefinition("no-children-fit", PatternDefinition.PartnerRule.ANY, 3, 2, false, 18, 0)));
+        assertThrows(IllegalArgumentException.class, () -> service.removePattern(PeopleService.DEFAULT_PATTERN));
+    }
+
+    private static List<Integer> ids(Stream<Person> people) {
+        return people.map(Person::getId).toList();
+    }
+
+    private List<Person> family(int base) {
+        final var children = Set.of(base + 3, base + 4, base + 5);
+
+        Person parent1 = new Person(base + 1);
+        parent1.setPartnerId(base + 2);
+        parent1.setChildrenIds(children);
+
+        Person parent2 = new Person(base + 2);
+        parent2.setPartnerId(base + 1);
+        parent2.setChildrenIds(children);
+
+        final var result = new ArrayList<>(List.of(parent1, parent2));
+
+        for (final var childId : children) {
+            Person child = new Person(childId);
+            child.setBirthDate(LocalDate.now().minus(1, ChronoUnit.YEARS));
+            child.setParentIds(Set.of(base + 1, base + 2));
+            result.add(child);
+        }
+
+        return result;
+    }
+}
@@ -5,13 +5,22 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import okhttp3.*;
+import okio.BufferedSource;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.annotation.DirtiesContext;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -20,6 +29,7 @@ import static com.fasterxml.jackson.databind.type.LogicalType.Collection;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability(tracing = false)
 class TechOpdrachtApplicationTests {
 	@LocalServerPort
 	private int port;
@@ -141,6 +151,330 @@ class TechOpdrachtApplicationTests {
 		}
 	}
 
+	@Test
+	@DirtiesContext
+	void BatchReportsBadRecordsAndReturnsFinalMatches() {
+		final String ndjson = """
+                {"id": 601, "name": "p1", "birthDate": "1980-01-01", "parent1": {"id": 1}, "parent2": {"id": 2}, "partner": {"id": 602}, "children": [{"id": 603}, {"id": 604}, {"id": 605}]}
+                {"id": 602, "name": "p2", "birthDate": "1980-01-01", "parent1": {"id": 1}, "parent2": {"id": 2}, "partner": {"id": 601}, "children": [{"id": 603}, {"id": 604}, {"id": 605}]}
+                {"id": 603, "name": "c1", "birthDate": "not a date", "parent1": {"id": 601}, "parent2": {"id": 602}, "children": []}
+                {"name": "c2", "birthDate": "2020-01-01", "parent1": {"id": 601}, "parent2": {"id": 602}, "children": []}
+                {"id": 605, "name": "c3", "birthDate": "2020-01-01", "parent1": {"id": 601}, "parent2": {"id": 602}, "children": []}
+                """;
+
+		final var request = new Request.Builder()
+				.url("http://localhost:" + port  + "/api/v1/people/batch")
+				.post(RequestBody.create(ndjson, MediaType.get("application/x-ndjson")))
+				.build();
+
+		try (Response response = client.newCall(request).execute()) {
+			assertEquals(200, response.code(), "children were auto-created by the parents");
+			final var result = objectMapper.readValue(response.body().string(), BatchResultDTO.class);
+
+			assertEquals(3, result.applied());
+			assertEquals(2, result.matched());
+			assertEquals(List.of(2, 3), result.errors().stream().map(BatchErrorDTO::index).toList());
+			final var ids = result.matches().stream().map(PersonDTO::id).collect(Collectors.toSet());
+			assertTrue(ids.containsAll(Set.of(601, 602)), "family from the batch should match");
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void LargeBatchesAreAppliedInChunksAndReturnOnePage() throws IOException {
+		// One single first, so families straddle the chunk boundaries
+		final var ndjson = new StringBuilder("{\"id\": 99999, \"name\": \"single\"}\n");
+		final var families = 250;
+		for (int family = 0; family < families; family++) {
+			final var base = 100_000 + family * 10;
+			final var children = "[{\"id\": %d}, {\"id\": %d}, {\"id\": %d}]".formatted(base + 2, base + 3, base + 4);
+			ndjson.append("{\"id\": %d, \"birthDate\": \"1980-01-01\", \"partner\": {\"id\": %d}, \"children\": %s}\n".formatted(base, base + 1, children));
+			ndjson.append("{\"id\": %d, \"birthDate\": \"1980-01-01\", \"partner\": {\"id\": %d}, \"children\": %s}\n".formatted(base + 1, base, children));
+			for (int child = 2; child < 5; child++) {
+				ndjson.append("{\"id\": %d, \"birthDate\": \"2020-01-01\", \"parent1\": {\"id\": %d}, \"parent2\": {\"id\": %d}}\n".formatted(base + child, base, base + 1));
+			}
+		}
+
+		final var request = new Request.Builder()
+				.url("http://localhost:" + port + "/api/v1/people/batch?limit=10")
+				.post(RequestBody.create(ndjson.toString(), MediaType.get("application/x-ndjson")))
+				.build();
+
+		try (Response response = client.newCall(request).execute()) {
+			assertEquals(200, response.code());
+			final var result = objectMapper.readValue(response.body().string(), BatchResultDTO.class);
+
+			assertEquals(families * 5 + 1, result.applied());
+			assertEquals(families * 2, result.matched(), "families split over chunks match as well");
+			assertEquals(10, result.matches().size());
+			assertEquals(String.valueOf(result.matches().getLast().id()), response.header(PeopleController.NEXT_CURSOR_HEADER));
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void UnchangedMatchListIsNotSentAgain() throws IOException {
+		final String parent1 = """
+                {"id": 701, "name": "p1", "birthDate": "1980-01-01", "parent1": {"id": 711}, "parent2": {"id": 712}, "partner": {"id": 702}, "children": [{"id": 703}, {"id": 704}, {"id": 705}]}
+                """;
+		final String parent2 = """
+                {"id": 702, "name": "p2", "birthDate": "1980-01-01", "parent1": {"id": 713}, "parent2": {"id": 714}, "partner": {"id": 701}, "children": [{"id": 703}, {"id": 704}, {"id": 705}]}
+                """;
+		final String child = """
+                {"id": 703, "name": "c1", "birthDate": "2020-01-01", "parent1": {"id": 701}, "parent2": {"id": 702}, "children": []}
+                """;
+		final String unrelated = """
+                {"id": 790, "name": "someone else", "birthDate": "1990-01-01", "parent1": {"id": 791}, "parent2": {"id": 792}, "children": []}
+                """;
+		final String renamedParent = """
+                {"id": 701, "name": "renamed", "birthDate": "1980-01-01", "parent1": {"id": 711}, "parent2": {"id": 712}, "partner": {"id": 702}, "children": [{"id": 703}, {"id": 704}, {"id": 705}]}
+                """;
+
+		client.newCall(createRequest(parent1)).execute().close();
+		client.newCall(createRequest(parent2)).execute().close();
+
+		final String etag;
+		try (Response response = client.newCall(createRequest(child)).execute()) {
+			assertEquals(200, response.code());
+			etag = response.header("ETag");
+			assertNotNull(etag);
+		}
+
+		try (Response response = client.newCall(withIfNoneMatch(createRequest(unrelated), etag)).execute()) {
+			assertEquals(304, response.code(), "the write did not change the match list");
+			assertEquals(etag, response.header("ETag"));
+		}
+
+		try (Response response = client.newCall(withIfNoneMatch(createRequest(renamedParent), etag)).execute()) {
+			assertEquals(200, response.code(), "a match changed");
+			assertNotEquals(etag, response.header("ETag"));
+			assertTrue(response.body().string().contains("renamed"));
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void MatchListCanBePagedWithACursor() throws IOException {
+		final String parent1 = """
+                {"id": 801, "name": "p1", "birthDate": "1980-01-01", "parent1": {"id": 811}, "parent2": {"id": 812}, "partner": {"id": 802}, "children": [{"id": 803}, {"id": 804}, {"id": 805}]}
+                """;
+		final String parent2 = """
+                {"id": 802, "name": "p2", "birthDate": "1980-01-01", "parent1": {"id": 813}, "parent2": {"id": 814}, "partner": {"id": 801}, "children": [{"id": 803}, {"id": 804}, {"id": 805}]}
+                """;
+		final String child = """
+                {"id": 803, "name": "c1", "birthDate": "2020-01-01", "parent1": {"id": 801}, "parent2": {"id": 802}, "children": []}
+                """;
+
+		client.newCall(createRequest(parent1)).execute().close();
+		client.newCall(createRequest(parent2)).execute().close();
+
+		final String etag;
+		try (Response response = client.newCall(createRequest(child)).execute()) {
+			etag = response.header("ETag");
+			assertNotNull(etag, "the whole list has one");
+		}
+
+		final String next;
+		try (Response response = client.newCall(withQuery(createRequest(child), "cursor=800&limit=1")).execute()) {
+			assertEquals(200, response.code());
+			final var page = objectMapper.readValue(response.body().string(), new TypeReference<List<PersonDTO>>() {});
+
+			assertEquals(List.of(801), page.stream().map(PersonDTO::id).toList());
+			next = response.header("X-Next-Cursor");
+			assertEquals("801", next);
+			assertNull(response.header("ETag"), "the list's ETag does not describe a page");
+		}
+
+		try (Response response = client.newCall(withQuery(createRequest(child), "cursor=" + next + "&limit=1")
+				.newBuilder().header("If-None-Match", etag).build()).execute()) {
+			assertEquals(200, response.code(), "a page is sent even when the whole list is unchanged");
+			final var page = objectMapper.readValue(response.body().string(), new TypeReference<List<PersonDTO>>() {});
+
+			assertEquals(List.of(802), page.stream().map(PersonDTO::id).toList());
+			assertNull(response.header("X-Next-Cursor"), "last page");
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void MissingRelativesAreAcceptedAndMissingIdsRejected() throws IOException {
+		final String orphan = """
+                {"id": 701, "name": "orphan", "birthDate": "2000-02-29", "parent1": null, "partner": null, "children": null}
+                """;
+		final String anonymous = """
+                {"name": "nobody", "birthDate": "2000-01-01"}
+                """;
+		final String badDate = """
+                {"id": 702, "birthDate": "2001-02-29"}
+                """;
+		final String badName = """
+                {"id": 703, "name": {"first": "no"}}
+                """;
+
+		try (Response response = client.newCall(createRequest(orphan)).execute()) {
+			assertEquals(444, response.code(), "accepted, nothing matches");
+		}
+
+		for (final var invalid : List.of(anonymous, badDate, badName)) {
+			try (Response response = client.newCall(createRequest(invalid)).execute()) {
+				assertEquals(400, response.code(), invalid);
+			}
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void BinaryRequestsAndMatchListsAreNegotiated() throws IOException {
+		final var children = List.of(new PersonReferenceDTO(903), new PersonReferenceDTO(904), new PersonReferenceDTO(905));
+		final var family = List.of(
+				new PersonDTO(901, "p1", LocalDate.of(1980, 1, 1), new PersonReferenceDTO(911), new PersonReferenceDTO(912), new PersonReferenceDTO(902), children),
+				new PersonDTO(902, "p2", LocalDate.of(1960, 1, 1), new PersonReferenceDTO(913), new PersonReferenceDTO(914), new PersonReferenceDTO(901), children),
+				new PersonDTO(903, "c1", LocalDate.of(2020, 1, 1), new PersonReferenceDTO(901), new PersonReferenceDTO(902), null, List.of())
+		);
+
+		for (final var person : family) {
+			final var encoded = new ByteArrayOutputStream();
+			PeopleWireFormat.write(person.toPerson(), encoded);
+			client.newCall(new Request.Builder()
+					.url("http://localhost:" + port + "/api/v1/people")
+					.post(RequestBody.create(encoded.toByteArray(), MediaType.get(PeopleWireFormat.MEDIA_TYPE_VALUE)))
+					.build()).execute().close();
+		}
+
+		try (Response response = client.newCall(createRequest(objectMapper.writeValueAsString(family.get(2)))
+				.newBuilder().header("Accept", PeopleWireFormat.MEDIA_TYPE_VALUE).build()).execute()) {
+			assertEquals(200, response.code(), "the binary records were applied");
+			assertEquals(PeopleWireFormat.MEDIA_TYPE_VALUE, response.header("Content-Type"));
+
+			final var in = response.body().byteStream();
+			final var matches = new ArrayList<Person>();
+			for (var person = PeopleWireFormat.readPerson(in); person != null; person = PeopleWireFormat.readPerson(in)) {
+				matches.add(person);
+			}
+
+			assertEquals(List.of(901, 902), matches.stream().map(Person::getId).toList());
+			assertEquals(family.get(1).birthDate(), matches.get(1).getBirthDate(), "epoch days before 1970 survive");
+			assertEquals(Optional.of(901), matches.get(1).getPartnerId());
+		}
+	}
+
+	@Test
+	void MalformedBinaryRequestsAreRejected() throws IOException {
+		final var encoded = new ByteArrayOutputStream();
+		PeopleWireFormat.write(new Person(801), encoded);
+		encoded.write(0);
+		// Id 1 with the epoch day that stands for "no birth date"
+		final var reservedDate = new byte[]{2, 2, -1, -1, -1, -1, 15, 0};
+
+		for (final var body : List.of(encoded.toByteArray(), reservedDate)) {
+			try (Response response = client.newCall(new Request.Builder()
+					.url("http://localhost:" + port + "/api/v1/people")
+					.post(RequestBody.create(body, MediaType.get(PeopleWireFormat.MEDIA_TYPE_VALUE)))
+					.build()).execute()) {
+				assertEquals(400, response.code());
+			}
+		}
+	}
+
+	@Test
+	@DirtiesContext
+	void MatchEventsAreStreamedAndCanBeResumed() throws IOException {
+		final String parent1 = """
+                {"id": 901, "name": "p1", "birthDate": "1980-01-01", "parent1": {"id": 911}, "parent2": {"id": 912}, "partner": {"id": 902}, "children": [{"id": 903}, {"id": 904}, {"id": 905}]}
+                """;
+		final String parent2 = """
+                {"id": 902, "name": "p2", "birthDate": "1980-01-01", "parent1": {"id": 913}, "parent2": {"id": 914}, "partner": {"id": 901}, "children": [{"id": 903}, {"id": 904}, {"id": 905}]}
+                """;
+		final String child = """
+                {"id": 903, "name": "c1", "birthDate": "2020-01-01", "parent1": {"id": 901}, "parent2": {"id": 902}, "children": []}
+                """;
+
+		final String resumeToken;
+		try (Response events = client.newCall(eventsRequest(null)).execute()) {
+			final var source = events.body().source();
+			final var subscribed = nextEvent(source);
+			assertEquals("subscribed", subscribed.get("event"));
+			resumeToken = subscribed.get("id");
+
+			for (final var person : List.of(parent1, parent2, child)) {
+				client.newCall(createRequest(person)).execute().close();
+			}
+
+			final var entered = Set.of(nextEvent(source).get("data"), nextEvent(source).get("data"));
+			assertEquals(Set.of("{\"id\":901}", "{\"id\":902}"), entered);
+		}
+
+		try (Response events = client.newCall(eventsRequest(resumeToken)).execute()) {
+			final var source = events.body().source();
+			assertEquals("subscribed", nextEvent(source).get("event"));
+
+			final var first = nextEvent(source);
+			final var second = nextEvent(source);
+			assertEquals("entered", first.get("event"));
+			assertEquals(Set.of("{\"id\":901}", "{\"id\":902}"), Set.of(first.get("data"), second.get("data")), "missed events are replayed");
+		}
+	}
+
+	@Test
+	void MetricsAreExposedForPrometheus() {
+		final var request = new Request.Builder()
+				.url("http://localhost:" + port  + "/actuator/prometheus")
+				.get()
+				.build();
+
+		try (Response response = client.newCall(request).execute()) {
+			assertEquals(200, response.code());
+			final var body = response.body().string();
+
+			assertTrue(body.contains("people_mutation_seconds"));
+			assertTrue(body.contains("people_lock_wait_seconds"));
+			assertTrue(body.contains("people_matches"));
+			assertTrue(body.contains("people_placeholders_total"));
+			assertTrue(body.contains("people_placeholders_live"));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	private Request eventsRequest(String lastEventId) {
+		final var request = new Request.Builder()
+				.url("http://localhost:" + port  + "/api/v1/people/matches/events")
+				.get();
+
+		if (lastEventId != null) {
+			request.header("Last-Event-ID", lastEventId);
+		}
+
+		return request.build();
+	}
+
+	/**
+	 * Reads the fields of the next server-sent event, skipping comments
+	 */
+	private static Map<String, String> nextEvent(BufferedSource source) throws IOException {
+		final var fields = new HashMap<String, String>();
+
+		for (var line = source.readUtf8LineStrict(); !line.isEmpty() || fields.isEmpty(); line = source.readUtf8LineStrict()) {
+			final var separator = line.indexOf(':');
+
+			if (separator > 0) {
+				fields.put(line.substring(0, separator), line.substring(separator + 1));
+			}
+		}
+
+		return fields;
+	}
+
+	private static Request withQuery(Request request, String query) {
+		return request.newBuilder().url(request.url() + "?" + query).build();
+	}
+
+	private static Request withIfNoneMatch(Request request, String etag) {
+		return request.newBuilder().header("If-None-Match", etag).build();
+	}
+
 	@NotNull
 	private Request createRequest(String parent1) {
 		RequestBody body = RequestBody.create(parent1, MediaType.get("application/json"));